@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+// 63          caBits caBits - 1                                 0
+// +-----------------+-------------------------------------------+
+// |   store index   |  ca code, exactly caWeight bits set        |
+// +-----------------+-------------------------------------------+
+//
+// store index in the top storeBits bits, authorization >>> caBits with caBits = 64 - storeBits
+//
+// ca codes of equal weight are never subsets of each other, so the reaktor
+// mask check (authorization & routeAuthorization) == routeAuthorization
+// only matches the same store and ca
+final class TlsAuthorizationEncoding
+{
+    private final int caBits;
+    private final int caWeight;
+    private final long caCapacity;
+    private final long[][] binomials;
+
+    TlsAuthorizationEncoding(
+        int storeBits,
+        int caWeight)
+    {
+        if (storeBits < 1 || storeBits > 16)
+        {
+            throw new IllegalArgumentException("authorization store bits must be in [1, 16]: " + storeBits);
+        }
+
+        final int caBits = Long.SIZE - storeBits;
+        if (caWeight < 1 || caWeight > caBits >> 1)
+        {
+            throw new IllegalArgumentException("authorization ca weight must be in [1, " + (caBits >> 1) + "]: " + caWeight);
+        }
+
+        final long[][] binomials = new long[caBits + 1][caWeight + 1];
+        for (int n = 0; n <= caBits; n++)
+        {
+            binomials[n][0] = 1L;
+            for (int k = 1; k <= Math.min(n, caWeight); k++)
+            {
+                binomials[n][k] = binomials[n - 1][k - 1] + binomials[n - 1][k];
+            }
+        }
+
+        this.caBits = caBits;
+        this.caWeight = caWeight;
+        this.caCapacity = binomials[caBits][caWeight];
+        this.binomials = binomials;
+    }
+
+    int storeCapacity()
+    {
+        return 1 << (Long.SIZE - caBits);
+    }
+
+    long caCapacity()
+    {
+        return caCapacity;
+    }
+
+    int storeIndex(
+        long authorization)
+    {
+        return (int) (authorization >>> caBits);
+    }
+
+    // combination of given rank in colexicographic order, rank 0 with weight 1 is bit 0
+    long encode(
+        int storeIndex,
+        long caRank)
+    {
+        assert caRank < caCapacity;
+
+        long code = 0L;
+        long rank = caRank;
+        for (int k = caWeight, n = caBits - 1; k > 0; k--)
+        {
+            while (binomials[n][k] > rank)
+            {
+                n--;
+            }
+
+            code |= 1L << n;
+            rank -= binomials[n][k];
+            n--;
+        }
+
+        return ((long) storeIndex << caBits) | code;
+    }
+}
@@ -0,0 +1,440 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.security.auth.x500.X500Principal;
+
+// caches successful certificate chain validations, replaced with the store context on reload
+final class TlsCachingTrustManager extends X509ExtendedTrustManager
+{
+    private static final int KEY_USAGE_KEY_CERT_SIGN = 5;
+    private static final int SUBJECT_ALT_NAME_DNS = 2;
+    private static final int SUBJECT_ALT_NAME_IP_ADDRESS = 7;
+
+    private final X509ExtendedTrustManager delegate;
+    private final int capacity;
+    private final long timeoutMillis;
+    private final Map<ChainKey, Long> verified;   // chain -> expires at millis, in least recently used order
+    private final Map<String, Set<ByteBuffer>> pins;   // peer hostname -> sha256 of subject public key info
+
+    TlsCachingTrustManager(
+        X509ExtendedTrustManager delegate,
+        int capacity,
+        long timeoutMillis,
+        Map<String, Set<ByteBuffer>> pins)
+    {
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.timeoutMillis = timeoutMillis;
+        this.pins = pins;
+        this.verified = new LinkedHashMap<ChainKey, Long>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<ChainKey, Long> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public void checkClientTrusted(
+        X509Certificate[] chain,
+        String authType) throws CertificateException
+    {
+        final ChainKey key = new ChainKey(chain, authType, null);
+        if (!isVerified(key))
+        {
+            delegate.checkClientTrusted(chain, authType);
+            onVerified(key, chain);
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(
+        X509Certificate[] chain,
+        String authType,
+        Socket socket) throws CertificateException
+    {
+        final ChainKey key = new ChainKey(chain, authType, null);
+        if (!isVerified(key))
+        {
+            delegate.checkClientTrusted(chain, authType, socket);
+            onVerified(key, chain);
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(
+        X509Certificate[] chain,
+        String authType,
+        SSLEngine engine) throws CertificateException
+    {
+        final ChainKey key = new ChainKey(chain, authType, null);
+        if (!isVerified(key))
+        {
+            delegate.checkClientTrusted(chain, authType, engine);
+            onVerified(key, chain);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(
+        X509Certificate[] chain,
+        String authType) throws CertificateException
+    {
+        delegate.checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(
+        X509Certificate[] chain,
+        String authType,
+        Socket socket) throws CertificateException
+    {
+        delegate.checkServerTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkServerTrusted(
+        X509Certificate[] chain,
+        String authType,
+        SSLEngine engine) throws CertificateException
+    {
+        // client engines verify the endpoint against the peer host, so it is part of the key
+        final String hostname = engine != null ? engine.getPeerHost() : null;
+        if (!isPinned(chain, hostname))
+        {
+            final ChainKey key = new ChainKey(chain, authType, hostname);
+            if (!isVerified(key))
+            {
+                delegate.checkServerTrusted(chain, authType, engine);
+                onVerified(key, chain);
+            }
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers()
+    {
+        return delegate.getAcceptedIssuers();
+    }
+
+    // @return true if the chain is issued up to a pinned public key and identifies the hostname, skipping path building
+    private boolean isPinned(
+        X509Certificate[] chain,
+        String hostname) throws CertificateException
+    {
+        final Set<ByteBuffer> hostnamePins = hostname != null ? pins.get(hostname.toLowerCase(Locale.ROOT)) : null;
+
+        boolean pinned = false;
+        if (hostnamePins != null)
+        {
+            try
+            {
+                final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                int pinnedIndex = -1;
+                for (int i = 0; pinnedIndex == -1 && i < chain.length; i++)
+                {
+                    final byte[] hash = sha256.digest(chain[i].getPublicKey().getEncoded());
+                    if (hostnamePins.contains(ByteBuffer.wrap(hash)))
+                    {
+                        pinnedIndex = i;
+                    }
+                }
+
+                if (pinnedIndex == -1)
+                {
+                    throw new CertificateException("No pinned public key in certificate chain for " + hostname);
+                }
+
+                checkPinnedPath(chain, pinnedIndex);
+                checkHostname(chain[0], hostname);
+                pinned = true;
+            }
+            catch (CertificateException ex)
+            {
+                throw ex;
+            }
+            catch (GeneralSecurityException ex)
+            {
+                throw new CertificateException(ex);
+            }
+        }
+
+        return pinned;
+    }
+
+    // validates the certificates below the pinned one with the pinned certificate as the only trust anchor
+    private static void checkPinnedPath(
+        X509Certificate[] chain,
+        int pinnedIndex) throws GeneralSecurityException
+    {
+        final X509Certificate pinned = chain[pinnedIndex];
+        pinned.checkValidity();
+
+        // every issuer, including the trust anchor, must be a certificate authority allowed to sign certificates
+        for (int i = 1; i <= pinnedIndex; i++)
+        {
+            final X509Certificate issuer = chain[i];
+            final boolean[] keyUsage = issuer.getKeyUsage();
+            if (issuer.getBasicConstraints() < i - 1 ||
+                keyUsage != null && (keyUsage.length <= KEY_USAGE_KEY_CERT_SIGN || !keyUsage[KEY_USAGE_KEY_CERT_SIGN]))
+            {
+                throw new CertificateException("Not a certificate authority: " + issuer.getSubjectX500Principal());
+            }
+        }
+
+        if (pinnedIndex > 0)
+        {
+            final CertificateFactory factory = CertificateFactory.getInstance("X.509");
+            final CertPath path = factory.generateCertPath(asList(chain).subList(0, pinnedIndex));
+            final PKIXParameters parameters = new PKIXParameters(singleton(new TrustAnchor(pinned, null)));
+            parameters.setRevocationEnabled(false);
+            CertPathValidator.getInstance("PKIX").validate(path, parameters);
+        }
+    }
+
+    // matches the subject alternative names of the leaf certificate, or its common name when it has no DNS names
+    private static void checkHostname(
+        X509Certificate certificate,
+        String hostname) throws CertificateException
+    {
+        final boolean address = isAddress(hostname);
+        final Collection<List<?>> alternativeNames = certificate.getSubjectAlternativeNames();
+
+        boolean dnsNames = false;
+        boolean matched = false;
+        if (alternativeNames != null)
+        {
+            for (List<?> alternativeName : alternativeNames)
+            {
+                final int type = (Integer) alternativeName.get(0);
+                final Object name = alternativeName.get(1);
+                if (type == SUBJECT_ALT_NAME_DNS)
+                {
+                    dnsNames = true;
+                    matched |= !address && matchesDnsName((String) name, hostname);
+                }
+                else if (type == SUBJECT_ALT_NAME_IP_ADDRESS)
+                {
+                    matched |= address && matchesAddress((String) name, hostname);
+                }
+            }
+        }
+
+        if (!matched && !dnsNames && !address)
+        {
+            final String commonName = commonName(certificate);
+            matched = commonName != null && matchesDnsName(commonName, hostname);
+        }
+
+        if (!matched)
+        {
+            throw new CertificateException("No name matching " + hostname + " in pinned certificate chain");
+        }
+    }
+
+    private static boolean matchesDnsName(
+        String name,
+        String hostname)
+    {
+        final String pattern = name.toLowerCase(Locale.ROOT);
+        final String host = hostname.toLowerCase(Locale.ROOT);
+
+        boolean matches;
+        if (pattern.startsWith("*."))
+        {
+            // wildcard matches exactly one left-most label
+            final int dot = host.indexOf('.');
+            matches = dot > 0 && host.substring(dot).equals(pattern.substring(1));
+        }
+        else
+        {
+            matches = host.equals(pattern);
+        }
+        return matches;
+    }
+
+    private static boolean matchesAddress(
+        String name,
+        String hostname)
+    {
+        boolean matches;
+        try
+        {
+            matches = isAddress(name) && InetAddress.getByName(name).equals(InetAddress.getByName(hostname));
+        }
+        catch (UnknownHostException ex)
+        {
+            matches = false;
+        }
+        return matches;
+    }
+
+    private static boolean isAddress(
+        String hostname)
+    {
+        return hostname.indexOf(':') != -1 || hostname.chars().allMatch(c -> c == '.' || Character.isDigit(c));
+    }
+
+    private static String commonName(
+        X509Certificate certificate) throws CertificateException
+    {
+        String commonName = null;
+        try
+        {
+            final LdapName subject = new LdapName(certificate.getSubjectX500Principal().getName(X500Principal.RFC2253));
+            for (Rdn rdn : subject.getRdns())
+            {
+                if ("CN".equalsIgnoreCase(rdn.getType()))
+                {
+                    commonName = rdn.getValue().toString();
+                }
+            }
+        }
+        catch (InvalidNameException ex)
+        {
+            throw new CertificateException(ex);
+        }
+        return commonName;
+    }
+
+    private synchronized boolean isVerified(
+        ChainKey key)
+    {
+        if (capacity == 0)
+        {
+            return false;
+        }
+
+        final Long expiresAt = verified.get(key);
+        final boolean cached = expiresAt != null && System.currentTimeMillis() < expiresAt;
+        if (expiresAt != null && !cached)
+        {
+            verified.remove(key);
+        }
+        return cached;
+    }
+
+    private void onVerified(
+        ChainKey key,
+        X509Certificate[] chain)
+    {
+        if (capacity == 0)
+        {
+            return;
+        }
+
+        // never beyond the validity of any certificate in the chain
+        long expiresAt = System.currentTimeMillis() + timeoutMillis;
+        for (X509Certificate certificate : chain)
+        {
+            expiresAt = Math.min(expiresAt, certificate.getNotAfter().getTime());
+        }
+
+        synchronized (this)
+        {
+            verified.put(key, expiresAt);
+        }
+    }
+
+    private static final class ChainKey
+    {
+        private final byte[][] encoded;
+        private final String authType;
+        private final String hostname;
+        private final int hashCode;
+
+        private ChainKey(
+            X509Certificate[] chain,
+            String authType,
+            String hostname) throws CertificateEncodingException
+        {
+            final byte[][] encoded = new byte[chain.length][];
+            for (int i = 0; i < chain.length; i++)
+            {
+                encoded[i] = chain[i].getEncoded();
+            }
+
+            this.encoded = encoded;
+            this.authType = authType;
+            this.hostname = hostname;
+            this.hashCode = 31 * (31 * Arrays.deepHashCode(encoded) + authType.hashCode()) + Objects.hashCode(hostname);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(
+            Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+
+            if (!(obj instanceof ChainKey))
+            {
+                return false;
+            }
+
+            final ChainKey that = (ChainKey) obj;
+            return this.hashCode == that.hashCode &&
+                    this.authType.equals(that.authType) &&
+                    Objects.equals(this.hostname, that.hostname) &&
+                    Arrays.deepEquals(this.encoded, that.encoded);
+        }
+    }
+}
@@ -21,6 +21,38 @@ public class TlsConfiguration extends Configuration
 {
     public static final IntPropertyDef TLS_HANDSHAKE_WINDOW_BYTES;
     public static final PropertyDef<String> TLS_KEY_MANAGER_ALGORITHM;
+    public static final BooleanPropertyDef TLS_KEY_MANAGER_SNI;
+    public static final PropertyDef<String> TLS_HANDSHAKE_PROTOCOLS;
+    public static final PropertyDef<String> TLS_HANDSHAKE_CIPHER_SUITES;
+    public static final PropertyDef<String> TLS_HANDSHAKE_NAMED_GROUPS;
+    public static final BooleanPropertyDef TLS_DECODE_ZERO_COPY;
+    public static final BooleanPropertyDef TLS_ENGINE_BUFFERS_DIRECT;
+    public static final IntPropertyDef TLS_DECODE_BATCH_RECORDS;
+    public static final BooleanPropertyDef TLS_ENCODE_COALESCE;
+    public static final BooleanPropertyDef TLS_ENCODE_RECORD_DYNAMIC;
+    public static final IntPropertyDef TLS_ENCODE_RECORD_INITIAL_SIZE;
+    public static final LongPropertyDef TLS_ENCODE_RECORD_WARMUP_BYTES;
+    public static final LongPropertyDef TLS_ENCODE_RECORD_IDLE_MILLIS;
+    public static final IntPropertyDef TLS_SESSION_CACHE_CAPACITY;
+    public static final IntPropertyDef TLS_SESSION_CACHE_TIMEOUT;
+    public static final IntPropertyDef TLS_TRUST_CACHE_CAPACITY;
+    public static final IntPropertyDef TLS_TRUST_CACHE_TIMEOUT;
+    public static final IntPropertyDef TLS_CLIENT_SESSION_CACHE_CAPACITY;
+    public static final IntPropertyDef TLS_CLIENT_SESSION_CACHE_TIMEOUT;
+    public static final IntPropertyDef TLS_HANDSHAKE_TASK_THREADS;
+    public static final IntPropertyDef TLS_HANDSHAKE_TASK_QUEUE_CAPACITY;
+    public static final PropertyDef<String> TLS_HANDSHAKE_TASK_QUEUE_FULL;
+    public static final LongPropertyDef TLS_HANDSHAKE_TASK_DEFER_MILLIS;
+    public static final BooleanPropertyDef TLS_HANDSHAKE_TASK_DRAIN;
+    public static final IntPropertyDef TLS_SERVER_ENGINE_POOL_SIZE;
+    public static final IntPropertyDef TLS_STORE_LOAD_THREADS;
+    public static final LongPropertyDef TLS_STORE_PRELOAD_RETAIN_MILLIS;
+    public static final IntPropertyDef TLS_AUTHORIZATION_STORE_BITS;
+    public static final IntPropertyDef TLS_AUTHORIZATION_CA_WEIGHT;
+    public static final BooleanPropertyDef TLS_STORE_LAZY;
+    public static final IntPropertyDef TLS_STORE_LAZY_CAPACITY;
+    public static final BooleanPropertyDef TLS_STORE_RELOAD;
+    public static final LongPropertyDef TLS_STORE_RELOAD_DELAY_MILLIS;
 
     private static final ConfigurationDef TLS_CONFIG;
 
@@ -29,6 +61,38 @@ public class TlsConfiguration extends Configuration
         final ConfigurationDef config = new ConfigurationDef("nukleus.tls");
         TLS_HANDSHAKE_WINDOW_BYTES = config.property("handshake.window.bytes", 65536);
         TLS_KEY_MANAGER_ALGORITHM = config.property("handshake.key.manager.algorithm", "PKIX");
+        TLS_KEY_MANAGER_SNI = config.property("handshake.key.manager.sni", false);
+        TLS_HANDSHAKE_PROTOCOLS = config.property("handshake.protocols", "");
+        TLS_HANDSHAKE_CIPHER_SUITES = config.property("handshake.cipher.suites", "");
+        TLS_HANDSHAKE_NAMED_GROUPS = config.property("handshake.named.groups", "");
+        TLS_DECODE_ZERO_COPY = config.property("decode.zero.copy", false);
+        TLS_ENGINE_BUFFERS_DIRECT = config.property("engine.buffers.direct", false);
+        TLS_DECODE_BATCH_RECORDS = config.property("decode.batch.records", 1);
+        TLS_ENCODE_COALESCE = config.property("encode.coalesce", false);
+        TLS_ENCODE_RECORD_DYNAMIC = config.property("encode.record.dynamic", false);
+        TLS_ENCODE_RECORD_INITIAL_SIZE = config.property("encode.record.initial.size", 1400);
+        TLS_ENCODE_RECORD_WARMUP_BYTES = config.property("encode.record.warmup.bytes", 1024L * 1024L);
+        TLS_ENCODE_RECORD_IDLE_MILLIS = config.property("encode.record.idle.millis", 1000L);
+        TLS_SESSION_CACHE_CAPACITY = config.property("session.cache.capacity", 20480);
+        TLS_SESSION_CACHE_TIMEOUT = config.property("session.cache.timeout", 86400);
+        TLS_TRUST_CACHE_CAPACITY = config.property("trust.cache.capacity", 0);
+        TLS_TRUST_CACHE_TIMEOUT = config.property("trust.cache.timeout", 300);
+        TLS_CLIENT_SESSION_CACHE_CAPACITY = config.property("client.session.cache.capacity", 20480);
+        TLS_CLIENT_SESSION_CACHE_TIMEOUT = config.property("client.session.cache.timeout", 86400);
+        TLS_HANDSHAKE_TASK_THREADS = config.property("handshake.task.threads", 0);
+        TLS_HANDSHAKE_TASK_QUEUE_CAPACITY = config.property("handshake.task.queue.capacity", 1024);
+        TLS_HANDSHAKE_TASK_QUEUE_FULL = config.property("handshake.task.queue.full", "defer");
+        TLS_HANDSHAKE_TASK_DEFER_MILLIS = config.property("handshake.task.defer.millis", 10L);
+        TLS_HANDSHAKE_TASK_DRAIN = config.property("handshake.task.drain", false);
+        TLS_SERVER_ENGINE_POOL_SIZE = config.property("server.engine.pool.size", 0);
+        TLS_STORE_LOAD_THREADS = config.property("store.load.threads", 0);
+        TLS_STORE_PRELOAD_RETAIN_MILLIS = config.property("store.preload.retain.millis", 60000L);
+        TLS_AUTHORIZATION_STORE_BITS = config.property("authorization.store.bits", 8);
+        TLS_AUTHORIZATION_CA_WEIGHT = config.property("authorization.ca.weight", 1);
+        TLS_STORE_LAZY = config.property("store.lazy", false);
+        TLS_STORE_LAZY_CAPACITY = config.property("store.lazy.capacity", 0);
+        TLS_STORE_RELOAD = config.property("store.reload", false);
+        TLS_STORE_RELOAD_DELAY_MILLIS = config.property("store.reload.delay.millis", 1000L);
         TLS_CONFIG = config;
     }
 
@@ -48,4 +112,164 @@ public class TlsConfiguration extends Configuration
         return TLS_KEY_MANAGER_ALGORITHM.get(this);
     }
 
+    public boolean keyManagerSni()
+    {
+        return TLS_KEY_MANAGER_SNI.getAsBoolean(this);
+    }
+
+    public String handshakeProtocols()
+    {
+        return TLS_HANDSHAKE_PROTOCOLS.get(this);
+    }
+
+    public String handshakeCipherSuites()
+    {
+        return TLS_HANDSHAKE_CIPHER_SUITES.get(this);
+    }
+
+    public String handshakeNamedGroups()
+    {
+        return TLS_HANDSHAKE_NAMED_GROUPS.get(this);
+    }
+
+    public boolean decodeZeroCopy()
+    {
+        return TLS_DECODE_ZERO_COPY.getAsBoolean(this);
+    }
+
+    public boolean engineBuffersDirect()
+    {
+        return TLS_ENGINE_BUFFERS_DIRECT.getAsBoolean(this);
+    }
+
+    public int decodeBatchRecords()
+    {
+        return TLS_DECODE_BATCH_RECORDS.getAsInt(this);
+    }
+
+    public boolean encodeCoalesce()
+    {
+        return TLS_ENCODE_COALESCE.getAsBoolean(this);
+    }
+
+    public boolean encodeRecordDynamic()
+    {
+        return TLS_ENCODE_RECORD_DYNAMIC.getAsBoolean(this);
+    }
+
+    public int encodeRecordInitialSize()
+    {
+        return TLS_ENCODE_RECORD_INITIAL_SIZE.getAsInt(this);
+    }
+
+    public long encodeRecordWarmupBytes()
+    {
+        return TLS_ENCODE_RECORD_WARMUP_BYTES.getAsLong(this);
+    }
+
+    public long encodeRecordIdleMillis()
+    {
+        return TLS_ENCODE_RECORD_IDLE_MILLIS.getAsLong(this);
+    }
+
+    public int sessionCacheCapacity()
+    {
+        return TLS_SESSION_CACHE_CAPACITY.getAsInt(this);
+    }
+
+    public int sessionCacheTimeout()
+    {
+        return TLS_SESSION_CACHE_TIMEOUT.getAsInt(this);
+    }
+
+    public int trustCacheCapacity()
+    {
+        return TLS_TRUST_CACHE_CAPACITY.getAsInt(this);
+    }
+
+    public int trustCacheTimeout()
+    {
+        return TLS_TRUST_CACHE_TIMEOUT.getAsInt(this);
+    }
+
+    public int clientSessionCacheCapacity()
+    {
+        return TLS_CLIENT_SESSION_CACHE_CAPACITY.getAsInt(this);
+    }
+
+    public int clientSessionCacheTimeout()
+    {
+        return TLS_CLIENT_SESSION_CACHE_TIMEOUT.getAsInt(this);
+    }
+
+    public int handshakeTaskThreads()
+    {
+        return TLS_HANDSHAKE_TASK_THREADS.getAsInt(this);
+    }
+
+    public int handshakeTaskQueueCapacity()
+    {
+        return TLS_HANDSHAKE_TASK_QUEUE_CAPACITY.getAsInt(this);
+    }
+
+    public boolean handshakeTaskQueueFullReset()
+    {
+        return "reset".equals(TLS_HANDSHAKE_TASK_QUEUE_FULL.get(this));
+    }
+
+    public long handshakeTaskDeferMillis()
+    {
+        return TLS_HANDSHAKE_TASK_DEFER_MILLIS.getAsLong(this);
+    }
+
+    public boolean handshakeTaskDrain()
+    {
+        return TLS_HANDSHAKE_TASK_DRAIN.getAsBoolean(this);
+    }
+
+    public int serverEnginePoolSize()
+    {
+        return TLS_SERVER_ENGINE_POOL_SIZE.getAsInt(this);
+    }
+
+    public int storeLoadThreads()
+    {
+        return TLS_STORE_LOAD_THREADS.getAsInt(this);
+    }
+
+    public long storePreloadRetainMillis()
+    {
+        return TLS_STORE_PRELOAD_RETAIN_MILLIS.getAsLong(this);
+    }
+
+    public int authorizationStoreBits()
+    {
+        return TLS_AUTHORIZATION_STORE_BITS.getAsInt(this);
+    }
+
+    public int authorizationCaWeight()
+    {
+        return TLS_AUTHORIZATION_CA_WEIGHT.getAsInt(this);
+    }
+
+    public boolean storeLazy()
+    {
+        return TLS_STORE_LAZY.getAsBoolean(this);
+    }
+
+    public int storeLazyCapacity()
+    {
+        return TLS_STORE_LAZY_CAPACITY.getAsInt(this);
+    }
+
+    public boolean storeReload()
+    {
+        return TLS_STORE_RELOAD.getAsBoolean(this);
+    }
+
+    public long storeReloadDelayMillis()
+    {
+        return TLS_STORE_RELOAD_DELAY_MILLIS.getAsLong(this);
+    }
+
 }
@@ -30,6 +30,24 @@ public class TlsCounters
     public final LongSupplier clientDecodeReleases;
     public final LongSupplier clientEncodeAcquires;
     public final LongSupplier clientEncodeReleases;
+    public final LongSupplier serverSessionCacheHits;
+    public final LongSupplier serverSessionCacheMisses;
+    public final LongSupplier serverCertificatesEcdsa;
+    public final LongSupplier serverCertificatesRsa;
+    public final LongSupplier clientHandshakesResumed;
+    public final LongSupplier clientHandshakesFull;
+    public final LongSupplier handshakeTaskRejections;
+    public final LongConsumer handshakeTaskQueueDepth;
+    public final LongConsumer handshakeTaskLatencyNanos;
+    public final LongConsumer handshakeTaskCompletions;
+    public final LongSupplier serverEnginePoolHits;
+    public final LongSupplier serverEnginePoolMisses;
+    public final LongConsumer storeLoads;
+    public final LongConsumer storeLoadFailures;
+    public final LongConsumer storeLoadNanos;
+    public final LongConsumer storeEvictions;
+    public final LongConsumer storeIndexExhaustions;
+    public final LongConsumer storeReloadFailures;
 
     public TlsCounters(
         Function<String, LongSupplier> supplyCounter,
@@ -44,5 +62,23 @@ public class TlsCounters
         this.clientDecodeReleases = supplyCounter.apply("tls.client.decode.releases");
         this.clientEncodeAcquires = supplyCounter.apply("tls.client.encode.acquires");
         this.clientEncodeReleases = supplyCounter.apply("tls.client.encode.releases");
+        this.serverSessionCacheHits = supplyCounter.apply("tls.server.session.cache.hits");
+        this.serverSessionCacheMisses = supplyCounter.apply("tls.server.session.cache.misses");
+        this.serverCertificatesEcdsa = supplyCounter.apply("tls.server.certificates.ecdsa");
+        this.serverCertificatesRsa = supplyCounter.apply("tls.server.certificates.rsa");
+        this.clientHandshakesResumed = supplyCounter.apply("tls.client.handshakes.resumed");
+        this.clientHandshakesFull = supplyCounter.apply("tls.client.handshakes.full");
+        this.handshakeTaskRejections = supplyCounter.apply("tls.handshake.task.rejections");
+        this.handshakeTaskQueueDepth = supplyAccumulator.apply("tls.handshake.task.queue.depth");
+        this.handshakeTaskLatencyNanos = supplyAccumulator.apply("tls.handshake.task.latency.nanos");
+        this.handshakeTaskCompletions = supplyAccumulator.apply("tls.handshake.task.completions");
+        this.serverEnginePoolHits = supplyCounter.apply("tls.server.engine.pool.hits");
+        this.serverEnginePoolMisses = supplyCounter.apply("tls.server.engine.pool.misses");
+        this.storeLoads = supplyAccumulator.apply("tls.store.loads");
+        this.storeLoadFailures = supplyAccumulator.apply("tls.store.load.failures");
+        this.storeLoadNanos = supplyAccumulator.apply("tls.store.load.nanos");
+        this.storeEvictions = supplyAccumulator.apply("tls.store.evictions");
+        this.storeIndexExhaustions = supplyAccumulator.apply("tls.store.index.exhaustions");
+        this.storeReloadFailures = supplyAccumulator.apply("tls.store.reload.failures");
     }
 }
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+final class TlsDualKeyManager extends X509ExtendedKeyManager
+{
+    private static final String KEY_TYPE_EC = "EC";
+    private static final String PROTOCOL_TLS13 = "TLSv1.3";
+
+    private final X509ExtendedKeyManager delegate;
+
+    TlsDualKeyManager(
+        X509ExtendedKeyManager delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String chooseEngineServerAlias(
+        String keyType,
+        Principal[] issuers,
+        SSLEngine engine)
+    {
+        // TLS 1.3 asks for key types in client signature_algorithms order, serve ECDSA only if the client offers its curve
+        final SSLSession session = engine != null ? engine.getHandshakeSession() : null;
+        return !(session instanceof ExtendedSSLSession) ||
+               !PROTOCOL_TLS13.equals(session.getProtocol()) ||
+               KEY_TYPE_EC.equals(keyType) == permitsEcdsa((ExtendedSSLSession) session, issuers, engine)
+                ? delegate.chooseEngineServerAlias(keyType, issuers, engine)
+                : null;
+    }
+
+    @Override
+    public String chooseServerAlias(
+        String keyType,
+        Principal[] issuers,
+        Socket socket)
+    {
+        return delegate.chooseServerAlias(keyType, issuers, socket);
+    }
+
+    @Override
+    public String chooseEngineClientAlias(
+        String[] keyTypes,
+        Principal[] issuers,
+        SSLEngine engine)
+    {
+        return delegate.chooseEngineClientAlias(keyTypes, issuers, engine);
+    }
+
+    @Override
+    public String chooseClientAlias(
+        String[] keyTypes,
+        Principal[] issuers,
+        Socket socket)
+    {
+        return delegate.chooseClientAlias(keyTypes, issuers, socket);
+    }
+
+    @Override
+    public String[] getServerAliases(
+        String keyType,
+        Principal[] issuers)
+    {
+        return delegate.getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public String[] getClientAliases(
+        String keyType,
+        Principal[] issuers)
+    {
+        return delegate.getClientAliases(keyType, issuers);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(
+        String alias)
+    {
+        return delegate.getCertificateChain(alias);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(
+        String alias)
+    {
+        return delegate.getPrivateKey(alias);
+    }
+
+    // TLS 1.2 key type follows the negotiated cipher suite, where ECDHE_ECDSA suites already precede ECDHE_RSA
+    // TLS 1.3 ECDSA schemes are bound to a curve, so the client must offer the scheme for the curve of the ECDSA alias
+    private boolean permitsEcdsa(
+        ExtendedSSLSession session,
+        Principal[] issuers,
+        SSLEngine engine)
+    {
+        boolean permitsEcdsa = false;
+
+        final String alias = delegate.chooseEngineServerAlias(KEY_TYPE_EC, issuers, engine);
+        final X509Certificate[] chain = alias != null ? delegate.getCertificateChain(alias) : null;
+        final PublicKey publicKey = chain != null && chain.length > 0 ? chain[0].getPublicKey() : null;
+
+        if (publicKey instanceof ECPublicKey)
+        {
+            final String[] schemes = ecdsaSchemes((ECPublicKey) publicKey);
+            for (String algorithm : session.getPeerSupportedSignatureAlgorithms())
+            {
+                if (algorithm.equalsIgnoreCase(schemes[0]) || algorithm.equalsIgnoreCase(schemes[1]))
+                {
+                    permitsEcdsa = true;
+                    break;
+                }
+            }
+        }
+
+        return permitsEcdsa;
+    }
+
+    // @return TLS 1.3 signature scheme for the key curve, by standard name and by JCA name as reported by SunJSSE
+    private static String[] ecdsaSchemes(
+        ECPublicKey publicKey)
+    {
+        final int fieldSize = publicKey.getParams().getCurve().getField().getFieldSize();
+        final int hashSize = fieldSize > 384 ? 512 : fieldSize;
+        return new String[]
+        {
+            String.format("ecdsa_secp%dr1_sha%d", fieldSize, hashSize),
+            String.format("SHA%dwithECDSA", hashSize)
+        };
+    }
+}
@@ -34,11 +34,15 @@ final class TlsElektron implements Elektron
 
     TlsElektron(
         TlsConfiguration config,
-        Function<String, TlsStoreInfo> lookupStoreInfo)
+        Function<String, TlsStoreInfo> lookupStoreInfo,
+        TlsRouteIndex routeIndex,
+        TlsHandshakeExecutor handshakeExecutor,
+        TlsStoreLoader storeLoader)
     {
         Map<RouteKind, StreamFactoryBuilder> streamFactoryBuilders = new EnumMap<>(RouteKind.class);
-        streamFactoryBuilders.put(SERVER, new TlsServerFactoryBuilder(config, lookupStoreInfo));
-        streamFactoryBuilders.put(CLIENT, new TlsClientFactoryBuilder(config, lookupStoreInfo));
+        streamFactoryBuilders.put(SERVER, new TlsServerFactoryBuilder(config, lookupStoreInfo, routeIndex,
+                handshakeExecutor, storeLoader));
+        streamFactoryBuilders.put(CLIENT, new TlsClientFactoryBuilder(config, lookupStoreInfo, handshakeExecutor, storeLoader));
         this.streamFactoryBuilders = streamFactoryBuilders;
     }
 
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.reaktivity.nukleus.concurrent.Signaler.NO_CANCEL_ID;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reaktivity.nukleus.concurrent.Signaler;
+
+public final class TlsHandshakeExecutor implements AutoCloseable
+{
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong taskIds;
+
+    TlsHandshakeExecutor(
+        int threads,
+        int queueCapacity)
+    {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new HandshakeThreadFactory());
+        this.taskIds = new AtomicLong();
+    }
+
+    public long signalTask(
+        Runnable task,
+        Signaler signaler,
+        long routeId,
+        long streamId,
+        int signalId)
+    {
+        long taskId = NO_CANCEL_ID;
+
+        try
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    signaler.signalNow(routeId, streamId, signalId);
+                }
+            });
+
+            taskId = taskIds.incrementAndGet();
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // queue full, caller applies the configured policy
+        }
+
+        return taskId;
+    }
+
+    // pending tasks are dropped, their streams are cleaned up with the reaktor
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s [threads=%d, queued=%d]", getClass().getSimpleName(),
+                executor.getCorePoolSize(), executor.getQueue().size());
+    }
+
+    private static final class HandshakeThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadIds = new AtomicInteger();
+
+        @Override
+        public Thread newThread(
+            Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable, String.format("tls-handshake-%d", threadIds.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
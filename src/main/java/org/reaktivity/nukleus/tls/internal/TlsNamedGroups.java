@@ -0,0 +1,189 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.Collections.emptyList;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import org.agrona.LangUtil;
+import org.agrona.collections.Int2ObjectHashMap;
+
+// named groups per engine from Java 20, otherwise only process wide through jdk.tls.namedGroups
+final class TlsNamedGroups
+{
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final int HANDSHAKE_HEADER_SIZE = 4;
+    private static final int RANDOM_SIZE = 32;
+    private static final int EXTENSION_SUPPORTED_GROUPS = 0x000a;
+
+    private static final Int2ObjectHashMap<String> NAMES_BY_ID;
+    private static final MethodHandle SET_NAMED_GROUPS;
+
+    static
+    {
+        final Int2ObjectHashMap<String> namesById = new Int2ObjectHashMap<>();
+        namesById.put(0x0017, "secp256r1");
+        namesById.put(0x0018, "secp384r1");
+        namesById.put(0x0019, "secp521r1");
+        namesById.put(0x001d, "x25519");
+        namesById.put(0x001e, "x448");
+        namesById.put(0x0100, "ffdhe2048");
+        namesById.put(0x0101, "ffdhe3072");
+        namesById.put(0x0102, "ffdhe4096");
+        namesById.put(0x0103, "ffdhe6144");
+        namesById.put(0x0104, "ffdhe8192");
+        NAMES_BY_ID = namesById;
+        SET_NAMED_GROUPS = findOrNull("setNamedGroups", methodType(void.class, String[].class));
+    }
+
+    private TlsNamedGroups()
+    {
+    }
+
+    // @return true if named groups can be configured per engine through SSLParameters
+    static boolean perEngine()
+    {
+        return SET_NAMED_GROUPS != null;
+    }
+
+    // @return configured names in configured order, or null for provider defaults, unsupported names are ignored by JSSE
+    static String[] parse(
+        String configured)
+    {
+        return configured.trim().isEmpty() ? null : Arrays.stream(configured.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    // sets named groups in preference order on the parameters, requires perEngine()
+    static void set(
+        SSLParameters parameters,
+        String[] namedGroups)
+    {
+        try
+        {
+            SET_NAMED_GROUPS.invokeExact(parameters, namedGroups);
+        }
+        catch (Throwable ex)
+        {
+            LangUtil.rethrowUnchecked(ex);
+        }
+    }
+
+    // @return true if the offered groups match the configured groups, or if the offered groups are unknown
+    static boolean inEffect(
+        List<String> configured,
+        List<String> offered)
+    {
+        return offered.isEmpty() || offered.equals(configured);
+    }
+
+    // @return groups offered in a client hello, in preference order, or empty if unknown
+    static List<String> offered()
+    {
+        List<String> namedGroups = emptyList();
+
+        try
+        {
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+
+            final SSLEngine engine = context.createSSLEngine();
+            engine.setUseClientMode(true);
+
+            final ByteBuffer clientHello = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            engine.wrap(ByteBuffer.allocate(0), clientHello);
+            clientHello.flip();
+
+            namedGroups = supportedGroups(clientHello);
+        }
+        catch (GeneralSecurityException | SSLException | RuntimeException ex)
+        {
+            // no comparison possible
+        }
+
+        return namedGroups;
+    }
+
+    private static MethodHandle findOrNull(
+        String name,
+        MethodType type)
+    {
+        MethodHandle method = null;
+        try
+        {
+            method = MethodHandles.publicLookup().findVirtual(SSLParameters.class, name, type);
+        }
+        catch (NoSuchMethodException | IllegalAccessException ex)
+        {
+            // not before Java 20
+        }
+        return method;
+    }
+
+    private static List<String> supportedGroups(
+        ByteBuffer clientHello)
+    {
+        clientHello.position(RECORD_HEADER_SIZE + HANDSHAKE_HEADER_SIZE + Short.BYTES + RANDOM_SIZE);
+        skip(clientHello, clientHello.get() & 0xff);            // session id
+        skip(clientHello, clientHello.getShort() & 0xffff);     // cipher suites
+        skip(clientHello, clientHello.get() & 0xff);            // compression methods
+
+        final List<String> namedGroups = new ArrayList<>();
+        final int extensionsLimit = (clientHello.getShort() & 0xffff) + clientHello.position();
+        while (clientHello.position() < extensionsLimit)
+        {
+            final int type = clientHello.getShort() & 0xffff;
+            final int length = clientHello.getShort() & 0xffff;
+            if (type == EXTENSION_SUPPORTED_GROUPS)
+            {
+                final int groupsLimit = (clientHello.getShort() & 0xffff) + clientHello.position();
+                while (clientHello.position() < groupsLimit)
+                {
+                    final int id = clientHello.getShort() & 0xffff;
+                    namedGroups.add(NAMES_BY_ID.getOrDefault(id, String.format("0x%04x", id)));
+                }
+                break;
+            }
+            skip(clientHello, length);
+        }
+
+        return namedGroups;
+    }
+
+    private static void skip(
+        ByteBuffer buffer,
+        int length)
+    {
+        buffer.position(buffer.position() + length);
+    }
+}
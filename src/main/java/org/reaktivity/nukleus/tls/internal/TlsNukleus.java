@@ -16,29 +16,52 @@
 package org.reaktivity.nukleus.tls.internal;
 
 import static java.lang.System.getProperty;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.reaktivity.nukleus.route.RouteKind.CLIENT;
 import static org.reaktivity.nukleus.route.RouteKind.SERVER;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.KeyStore;
+import java.security.KeyStoreException;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
 
 import org.agrona.DirectBuffer;
 import org.agrona.LangUtil;
@@ -52,24 +75,31 @@ import org.reaktivity.nukleus.route.RouteKind;
 import org.reaktivity.nukleus.tls.internal.types.control.ErrorFW;
 import org.reaktivity.nukleus.tls.internal.types.control.ResolveFW;
 import org.reaktivity.nukleus.tls.internal.types.control.ResolvedFW;
+import org.reaktivity.nukleus.tls.internal.types.control.Role;
 import org.reaktivity.nukleus.tls.internal.types.control.RouteFW;
 import org.reaktivity.nukleus.tls.internal.types.control.TlsRouteExFW;
 import org.reaktivity.nukleus.tls.internal.types.control.UnresolveFW;
 import org.reaktivity.nukleus.tls.internal.types.control.UnresolvedFW;
 import org.reaktivity.nukleus.tls.internal.types.control.UnrouteFW;
 
-public final class TlsNukleus implements Nukleus
+public final class TlsNukleus implements Nukleus, AutoCloseable
 {
     public static final String NAME = "tls";
 
     public static final boolean DEBUG_HANDSHAKE_FINISHED = Boolean.getBoolean("tls.debug.handshake.finished");
 
+    private static final String PROPERTY_JDK_TLS_NAMED_GROUPS = "jdk.tls.namedGroups";
+
+    private static final Logger LOGGER = System.getLogger(TlsNukleus.class.getName());
+
     private static final String PROPERTY_TLS_KEYSTORE = "tls.keystore";
     private static final String PROPERTY_TLS_KEYSTORE_TYPE = "tls.keystore.type";
     private static final String PROPERTY_TLS_KEYSTORE_PASSWORD = "tls.keystore.password";
     private static final String PROPERTY_TLS_TRUSTSTORE = "tls.truststore";
     private static final String PROPERTY_TLS_TRUSTSTORE_TYPE = "tls.truststore.type";
     private static final String PROPERTY_TLS_TRUSTSTORE_PASSWORD = "tls.truststore.password";
+    private static final String PROPERTY_TLS_PINS = "tls.pins";
+    private static final String PROPERTY_TLS_POLICY = "tls.policy";
 
     private static final String DEFAULT_TLS_KEYSTORE = "keys";
     private static final String DEFAULT_TLS_KEYSTORE_TYPE = "JKS";
@@ -77,6 +107,14 @@ public final class TlsNukleus implements Nukleus
     private static final String DEFAULT_TLS_TRUSTSTORE = "trust";
     private static final String DEFAULT_TLS_TRUSTSTORE_TYPE = "JKS";
     private static final String DEFAULT_TLS_TRUSTSTORE_PASSWORD = "generated";
+    private static final String DEFAULT_TLS_PINS = "pins";
+    private static final String DEFAULT_TLS_POLICY = "policy";
+
+    private static final String POLICY_PROTOCOLS = "protocols";
+    private static final String POLICY_CIPHER_SUITES = "cipher.suites";
+    private static final String POLICY_NAMED_GROUPS = "named.groups";
+
+    private static final String PIN_SHA256_PREFIX = "sha256/";
 
     private final UnrouteFW unrouteRO = new UnrouteFW();
     private final RouteFW routeRO = new RouteFW();
@@ -94,15 +132,69 @@ public final class TlsNukleus implements Nukleus
 
     private final Map<Long, String> storesByRouteId;
 
-    private final TlsStoreInfo[] storeInfos;
+    private final TlsAuthorizationEncoding authorizationEncoding;
+    private final TlsStoreRegistry storeRegistry;
+    private final TlsHandshakeExecutor handshakeExecutor;
+    private final TlsRouteIndex routeIndex;
+    private final ExecutorService serverEnginePoolExecutor;
+    private final TlsStoreWatcher storeWatcher;
+    private final TlsStoreLoader storeLoader;
 
     TlsNukleus(
         TlsConfiguration config)
     {
         this.config = config;
 
+        // named groups are set per store engine where SSLParameters supports it, otherwise they are JVM-global
+        // configuration, affecting every SSLEngine in this process, preferred group first avoids HelloRetryRequest
+        final String namedGroups = config.handshakeNamedGroups();
+        if (!namedGroups.isEmpty() && !TlsNamedGroups.perEngine())
+        {
+            setPropertyIfAbsent(PROPERTY_JDK_TLS_NAMED_GROUPS, namedGroups);
+
+            // read once by SunJSSE, so ignored if anything in this process has used TLS already
+            final List<String> configured = asList(namedGroups.trim().toLowerCase(Locale.ROOT).split("\\s*,\\s*"));
+            final List<String> offered = TlsNamedGroups.offered();
+            if (!TlsNamedGroups.inEffect(configured, offered))
+            {
+                LOGGER.log(WARNING, "{0} effective {1} differs from configured {2}",
+                        PROPERTY_JDK_TLS_NAMED_GROUPS, offered, configured);
+            }
+        }
+
         this.storesByRouteId = new HashMap<>();
-        this.storeInfos = new TlsStoreInfo[256];
+        this.authorizationEncoding = new TlsAuthorizationEncoding(
+                config.authorizationStoreBits(), config.authorizationCaWeight());
+        this.storeRegistry = new TlsStoreRegistry(authorizationEncoding.storeCapacity());
+        this.routeIndex = new TlsRouteIndex();
+
+        // refills server engine pools of all stores, engine construction stays off the I/O threads
+        this.serverEnginePoolExecutor = config.serverEnginePoolSize() > 0
+                ? newSingleThreadExecutor(r -> newDaemonThread(r, "tls-engine-pool"))
+                : null;
+
+        // loads stores found at startup in parallel, otherwise each store loads on first route
+        // lazy server stores load on first handshake instead, so are not preloaded
+        final int storeLoadThreads = config.storeLoadThreads();
+        final boolean storePreload = storeLoadThreads > 0 && !config.storeLazy();
+        this.storeLoader = new TlsStoreLoader(this::loadStoreContext, storePreload
+                ? newStoreLoadExecutor(storeLoadThreads)
+                : null, config.storeLazyCapacity());
+        if (storePreload)
+        {
+            storeLoader.preload(config.directory(), config.storePreloadRetainMillis());
+        }
+
+        // reloads changed stores off the I/O threads, new handshakes pick up the reloaded context
+        this.storeWatcher = config.storeReload()
+                ? new TlsStoreWatcher(this::loadStoreContext, config.storeReloadDelayMillis(), storeLoader::reloadFailed)
+                : null;
+
+        // shared by all workers, otherwise delegated tasks run on the reaktor executor
+        final int handshakeTaskThreads = config.handshakeTaskThreads();
+        this.handshakeExecutor = handshakeTaskThreads > 0
+                ? new TlsHandshakeExecutor(handshakeTaskThreads, config.handshakeTaskQueueCapacity())
+                : null;
 
         Map<RouteKind, MessagePredicate> routeHandlers = new EnumMap<>(RouteKind.class);
         routeHandlers.put(SERVER, this::handleRoute);
@@ -143,7 +235,29 @@ public final class TlsNukleus implements Nukleus
     @Override
     public TlsElektron supplyElektron()
     {
-        return new TlsElektron(config, this::findStore);
+        return new TlsElektron(config, storeRegistry::find, routeIndex, handshakeExecutor, storeLoader);
+    }
+
+    // stops background threads, not called by the reaktor on shutdown so embedders close explicitly
+    @Override
+    public void close()
+    {
+        if (handshakeExecutor != null)
+        {
+            handshakeExecutor.close();
+        }
+
+        if (serverEnginePoolExecutor != null)
+        {
+            serverEnginePoolExecutor.shutdownNow();
+        }
+
+        if (storeWatcher != null)
+        {
+            storeWatcher.close();
+        }
+
+        storeLoader.close();
     }
 
     private boolean handleRoute(
@@ -172,13 +286,18 @@ public final class TlsNukleus implements Nukleus
     {
         final TlsRouteExFW routeEx = route.extension().get(tlsRouteExRO::wrap);
         final String store = routeEx.store().asString();
+        final String hostname = routeEx.hostname().asString();
+        final String protocol = routeEx.protocol().asString();
         final long routeId = route.correlationId();
 
         storesByRouteId.put(routeId, store);
-        TlsStoreInfo storeInfo = newStoreInfoIfNecessary(store);
+        // server only stores load on first ClientHello, client engines are created on the I/O thread
+        final boolean lazy = config.storeLazy() && route.role().get() == Role.SERVER;
+        TlsStoreInfo storeInfo = newStoreInfoIfNecessary(store, lazy);
         if (storeInfo != null)
         {
             storeInfo.routeCount++;
+            routeIndex.add(routeId, route.authorization(), store, hostname, protocol);
         }
 
         return storeInfo != null;
@@ -190,13 +309,15 @@ public final class TlsNukleus implements Nukleus
         final long routeId = unroute.routeId();
 
         final String store = storesByRouteId.remove(routeId);
-        TlsStoreInfo storeInfo = findStore(store);
+        routeIndex.remove(routeId);
+        TlsStoreInfo storeInfo = storeRegistry.find(store);
         if (storeInfo != null)
         {
+            storeInfo.releaseClientPeerPort(routeId);
             storeInfo.routeCount--;
             if (storeInfo.routeCount == 0)
             {
-                storeInfos[storeInfo.storeIndex] = null;
+                removeStoreInfo(storeInfo);
             }
         }
         return true;
@@ -216,9 +337,11 @@ public final class TlsNukleus implements Nukleus
         {
             int position = realm.indexOf(':');
             String store = position == -1 ? null : realm.substring(0, position);
-            TlsStoreInfo storeInfo = newStoreInfoIfNecessary(store);
+            TlsStoreInfo storeInfo = newStoreInfoIfNecessary(store, false);
             if (storeInfo != null)
             {
+                // resolve replies synchronously, so waits for a store still loading
+                storeInfo.load();
                 storeInfo.routeCount++;
                 String dname = realm.substring(position + 1);
                 authorization = storeInfo.authorization(dname);
@@ -254,14 +377,17 @@ public final class TlsNukleus implements Nukleus
         boolean unresolved = false;
         if (authorization != 0L)
         {
-            int storeIndex = (int) (authorization >>> 56);
-            TlsStoreInfo storeInfo = storeInfos[storeIndex];
-            storeInfo.routeCount--;
-            if (storeInfo.routeCount == 0)
+            int storeIndex = authorizationEncoding.storeIndex(authorization);
+            TlsStoreInfo storeInfo = storeRegistry.findByIndex(storeIndex);
+            if (storeInfo != null)
             {
-                storeInfos[storeInfo.storeIndex] = null;
+                storeInfo.routeCount--;
+                if (storeInfo.routeCount == 0)
+                {
+                    removeStoreInfo(storeInfo);
+                }
+                unresolved = storeInfo.unresolve(authorization);
             }
-            unresolved = storeInfo.unresolve(authorization);
         }
         if (unresolved)
         {
@@ -280,125 +406,352 @@ public final class TlsNukleus implements Nukleus
     }
 
     private TlsStoreInfo newStoreInfoIfNecessary(
-        String store)
+        String store,
+        boolean lazy)
     {
-        TlsStoreInfo storeInfo = findStore(store);
+        TlsStoreInfo storeInfo = storeRegistry.find(store);
         if (storeInfo != null)
         {
-            return storeInfo;
+            if (!lazy && storeInfo.lazy())
+            {
+                storeInfo.pin();
+                if (storeInfo.context() == null)
+                {
+                    storeInfo.complete(storeLoader.claim(store));
+                }
+            }
+
+            return storeInfo.context() != null || storeInfo.loading() || lazy ? storeInfo : null;
+        }
+
+        // routed without waiting for the store to load, only a load that already failed rejects the route
+        CompletableFuture<TlsStoreContext> load = null;
+        if (!lazy)
+        {
+            load = storeLoader.claim(store);
+            if (load.isCompletedExceptionally())
+            {
+                return null;
+            }
+        }
+
+        // stores beyond the store index capacity are routable, but cannot resolve authorizations
+        int storeIndex = storeRegistry.nextIndex(store);
+        if (storeIndex == TlsStoreRegistry.NO_STORE_INDEX)
+        {
+            storeLoader.indexExhausted();
+        }
+
+        storeInfo = new TlsStoreInfo(store, storeIndex, null, config.serverEnginePoolSize(),
+                serverEnginePoolExecutor, storeLoader, authorizationEncoding);
+        storeRegistry.add(storeInfo);
+
+        if (load != null)
+        {
+            storeInfo.pin();
+            storeInfo.complete(load);
+        }
+
+        if (storeWatcher != null)
+        {
+            storeWatcher.watch(storeInfo, resolve(config.directory(), store));
+        }
+
+        return storeInfo;
+    }
+
+    private void removeStoreInfo(
+        TlsStoreInfo storeInfo)
+    {
+        storeRegistry.remove(storeInfo);
+        storeLoader.release(storeInfo);
+
+        if (storeWatcher != null)
+        {
+            storeWatcher.unwatch(storeInfo);
         }
+    }
+
+    private TlsStoreContext loadStoreContext(
+        String store)
+    {
+        TlsStoreContext storeContext = null;
+
+        try
+        {
+            storeContext = newStoreContext(store);
+        }
+        catch (Exception ex)
+        {
+            LangUtil.rethrowUnchecked(ex);
+        }
+
+        return storeContext;
+    }
 
+    private TlsStoreContext newStoreContext(
+        String store) throws Exception
+    {
         Path directory = config.directory();
-        SSLContext context = null;
         Set<String> caDnames = new LinkedHashSet<>();
         boolean trustStoreExists = false;
-        int storeIndex = nextIndex(store);
 
-        try
+        String keyStorePassword = getProperty(PROPERTY_TLS_KEYSTORE_PASSWORD, DEFAULT_TLS_KEYSTORE_PASSWORD);
+        String keyStoreFilename = getProperty(PROPERTY_TLS_KEYSTORE, DEFAULT_TLS_KEYSTORE);
+        String keyStoreType = getProperty(PROPERTY_TLS_KEYSTORE_TYPE, DEFAULT_TLS_KEYSTORE_TYPE);
+        File keyStoreFile = resolve(directory, store, keyStoreFilename);
+
+        KeyManager[] keyManagers = keyStoreFile.exists()
+                ? newKeyManagers(keyStoreFile, keyStoreType, keyStorePassword.toCharArray())
+                : null;
+
+        String trustStorePassword = getProperty(PROPERTY_TLS_TRUSTSTORE_PASSWORD, DEFAULT_TLS_TRUSTSTORE_PASSWORD);
+        String trustStoreFilename = System.getProperty(PROPERTY_TLS_TRUSTSTORE, DEFAULT_TLS_TRUSTSTORE);
+        String trustStoreType = System.getProperty(PROPERTY_TLS_TRUSTSTORE_TYPE, DEFAULT_TLS_TRUSTSTORE_TYPE);
+        File trustStoreFile = resolve(directory, store, trustStoreFilename);
+
+        TrustManager[] trustManagers = null;
+        if (trustStoreFile.exists())
         {
-            String keyStorePassword = getProperty(PROPERTY_TLS_KEYSTORE_PASSWORD, DEFAULT_TLS_KEYSTORE_PASSWORD);
-            String keyStoreFilename = getProperty(PROPERTY_TLS_KEYSTORE, DEFAULT_TLS_KEYSTORE);
-            String keyStoreType = getProperty(PROPERTY_TLS_KEYSTORE_TYPE, DEFAULT_TLS_KEYSTORE_TYPE);
-            File keyStoreFile = resolve(directory, store, keyStoreFilename);
+            trustStoreExists = true;
+            KeyStore trustStore = KeyStore.getInstance(trustStoreType);
+            try (FileInputStream input = new FileInputStream(trustStoreFile))
+            {
+                trustStore.load(input, trustStorePassword.toCharArray());
+            }
+            // TODO: TLS Alert Record, code 112 / scope trustStore to match routes?
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(
+                    TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(trustStore);
+            trustManagers = trustManagerFactory.getTrustManagers();
 
-            KeyManager[] keyManagers = null;
-            if (keyStoreFile.exists())
+            for (String alias : Collections.list(trustStore.aliases()))
             {
-                KeyStore keyStore = KeyStore.getInstance(keyStoreType);
-                keyStore.load(new FileInputStream(keyStoreFile), keyStorePassword.toCharArray());
-                KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(
-                        config.keyManagerAlgorithm());
-                keyManagerFactory.init(keyStore, keyStorePassword.toCharArray());
-                keyManagers = keyManagerFactory.getKeyManagers();
+                if (trustStore.isCertificateEntry(alias))
+                {
+                    Certificate certificate = trustStore.getCertificate(alias);
+                    String dn = ((X509Certificate) certificate).getSubjectX500Principal().getName();
+                    caDnames.add(dn);
+                }
             }
+        }
 
-            String trustStorePassword = getProperty(PROPERTY_TLS_TRUSTSTORE_PASSWORD, DEFAULT_TLS_TRUSTSTORE_PASSWORD);
-            String trustStoreFilename = System.getProperty(PROPERTY_TLS_TRUSTSTORE, DEFAULT_TLS_TRUSTSTORE);
-            String trustStoreType = System.getProperty(PROPERTY_TLS_TRUSTSTORE_TYPE, DEFAULT_TLS_TRUSTSTORE_TYPE);
-            File trustStoreFile = resolve(directory, store, trustStoreFilename);
+        String pinsFilename = System.getProperty(PROPERTY_TLS_PINS, DEFAULT_TLS_PINS);
+        File pinsFile = resolve(directory, store, pinsFilename);
+        Map<String, Set<ByteBuffer>> pins = pinsFile.exists() ? loadPins(pinsFile) : emptyMap();
 
-            TrustManager[] trustManagers = null;
-            if (trustStoreFile.exists())
+        // repeated certificate chains skip path building until timeout or store reload, pinned hosts skip it always
+        final int trustCacheCapacity = config.trustCacheCapacity();
+        if (trustCacheCapacity > 0 || !pins.isEmpty())
+        {
+            if (trustManagers == null)
             {
-                trustStoreExists = true;
-                KeyStore trustStore = KeyStore.getInstance(trustStoreType);
-                trustStore.load(new FileInputStream(trustStoreFile), trustStorePassword.toCharArray());
-                // TODO: TLS Alert Record, code 112 / scope trustStore to match routes?
                 TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(
                         TrustManagerFactory.getDefaultAlgorithm());
-                trustManagerFactory.init(trustStore);
+                trustManagerFactory.init((KeyStore) null);
                 trustManagers = trustManagerFactory.getTrustManagers();
+            }
 
-                if (storeIndex == -1)
-                {
-                    // cannot fit in 1 byte
-                    return null;
-                }
-
-                for (String alias : Collections.list(trustStore.aliases()))
+            for (int i = 0; i < trustManagers.length; i++)
+            {
+                if (trustManagers[i] instanceof X509ExtendedTrustManager)
                 {
-                    if (trustStore.isCertificateEntry(alias))
-                    {
-                        Certificate certificate = trustStore.getCertificate(alias);
-                        String dn = ((X509Certificate) certificate).getSubjectX500Principal().getName();
-                        caDnames.add(dn);
-                    }
+                    final X509ExtendedTrustManager trustManager = (X509ExtendedTrustManager) trustManagers[i];
+                    trustManagers[i] = new TlsCachingTrustManager(trustManager, trustCacheCapacity,
+                            SECONDS.toMillis(config.trustCacheTimeout()), pins);
                 }
             }
+        }
 
-            context = SSLContext.getInstance("TLS");
-            context.init(keyManagers, trustManagers, new SecureRandom());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers, trustManagers, new SecureRandom());
+
+        // server sessions per store, bounded by the JSSE cache without locking on the I/O threads beyond JSSE itself
+        SSLSessionContext sessionContext = context.getServerSessionContext();
+        sessionContext.setSessionCacheSize(config.sessionCacheCapacity());
+        sessionContext.setSessionTimeout(config.sessionCacheTimeout());
+
+        // client sessions keyed by peer hostname and network route
+        SSLSessionContext clientSessionContext = context.getClientSessionContext();
+        clientSessionContext.setSessionCacheSize(config.clientSessionCacheCapacity());
+        clientSessionContext.setSessionTimeout(config.clientSessionCacheTimeout());
+
+        // store policy overrides configured policy, both filtered by what the provider supports
+        String policyFilename = System.getProperty(PROPERTY_TLS_POLICY, DEFAULT_TLS_POLICY);
+        File policyFile = resolve(directory, store, policyFilename);
+        Properties policy = policyFile.exists() ? loadPolicy(policyFile) : new Properties();
+
+        SSLParameters supported = context.getSupportedSSLParameters();
+        String[] protocols = supportedOrNull(policy.getProperty(POLICY_PROTOCOLS, config.handshakeProtocols()),
+                supported.getProtocols(), POLICY_PROTOCOLS, store);
+        String[] cipherSuites = supportedOrNull(policy.getProperty(POLICY_CIPHER_SUITES, config.handshakeCipherSuites()),
+                supported.getCipherSuites(), POLICY_CIPHER_SUITES, store);
+        String[] namedGroups = null;
+        if (TlsNamedGroups.perEngine())
+        {
+            namedGroups = TlsNamedGroups.parse(policy.getProperty(POLICY_NAMED_GROUPS, config.handshakeNamedGroups()));
         }
-        catch (Exception ex)
+        else if (policy.containsKey(POLICY_NAMED_GROUPS))
         {
-            LangUtil.rethrowUnchecked(ex);
+            LOGGER.log(WARNING, "{0} of store {1} ignored, use {2} before Java 20",
+                    POLICY_NAMED_GROUPS, store, PROPERTY_JDK_TLS_NAMED_GROUPS);
         }
 
-        storeInfo = new TlsStoreInfo(store, storeIndex, context, trustStoreExists, caDnames);
-        storeInfos[storeIndex] = storeInfo;
-        return storeInfo;
+        return new TlsStoreContext(context, trustStoreExists, caDnames, protocols, cipherSuites, namedGroups);
     }
 
-    private static File resolve(
-        Path directory,
-        String store,
-        String storeFilename)
+    // protocols=TLSv1.3, cipher.suites=<comma separated, in server preference order> and named.groups=<in preference order>
+    private static Properties loadPolicy(
+        File policyFile) throws IOException
     {
-        return store == null
-                ? directory.resolve("tls").resolve(storeFilename).toFile()
-                : directory.resolve("tls").resolve("stores").resolve(store).resolve(storeFilename).toFile();
+        final Properties policy = new Properties();
+        try (FileInputStream input = new FileInputStream(policyFile))
+        {
+            policy.load(input);
+        }
+        return policy;
+    }
+
+    // @return configured names in configured order, or null for provider defaults
+    private static String[] supportedOrNull(
+        String configured,
+        String[] supported,
+        String kind,
+        String store)
+    {
+        String[] names = null;
+
+        if (!configured.trim().isEmpty())
+        {
+            final Set<String> supportedNames = new HashSet<>(asList(supported));
+            names = Arrays.stream(configured.split(","))
+                          .map(String::trim)
+                          .filter(supportedNames::contains)
+                          .distinct()
+                          .toArray(String[]::new);
+
+            if (names.length == 0)
+            {
+                throw new IllegalArgumentException(String.format("No supported %s for store %s: %s", kind, store, configured));
+            }
+        }
+
+        return names;
     }
 
-    private TlsStoreInfo findStore(String store)
+    private KeyManager[] newKeyManagers(
+        File keyStoreFile,
+        String keyStoreType,
+        char[] keyStorePassword) throws Exception
     {
-        int storeIndex = Math.abs(store == null ? 1 : store.hashCode());
-        for (int i = 0; i < storeInfos.length; i++)
+        KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+        try (FileInputStream input = new FileInputStream(keyStoreFile))
         {
-            storeIndex = (storeIndex + i) % storeInfos.length;
-            TlsStoreInfo storeInfo = storeInfos[storeIndex];
-            if (storeInfo != null && Objects.equals(storeInfo.store, store))
+            keyStore.load(input, keyStorePassword);
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(
+                config.keyManagerAlgorithm());
+        keyManagerFactory.init(keyStore, keyStorePassword);
+        KeyManager[] keyManagers = keyManagerFactory.getKeyManagers();
+
+        // one context serves many hostnames, alias chosen by requested server name
+        if (config.keyManagerSni() && keyManagers.length == 1 && keyManagers[0] instanceof X509ExtendedKeyManager)
+        {
+            final X509ExtendedKeyManager keyManager = (X509ExtendedKeyManager) keyManagers[0];
+            keyManagers[0] = new TlsSniKeyManager(keyManager, keyStore, keyStorePassword);
+        }
+
+        // stores holding both ECDSA and RSA certificates serve ECDSA whenever the client permits it
+        Set<String> keyTypes = keyTypes(keyStore);
+        if (keyTypes.contains("EC") && keyTypes.contains("RSA") &&
+            keyManagers.length == 1 && keyManagers[0] instanceof X509ExtendedKeyManager)
+        {
+            keyManagers[0] = new TlsDualKeyManager((X509ExtendedKeyManager) keyManagers[0]);
+        }
+
+        return keyManagers;
+    }
+
+    private static Set<String> keyTypes(
+        KeyStore keyStore) throws KeyStoreException
+    {
+        final Set<String> keyTypes = new HashSet<>();
+
+        for (String alias : Collections.list(keyStore.aliases()))
+        {
+            final Certificate certificate = keyStore.isKeyEntry(alias) ? keyStore.getCertificate(alias) : null;
+            if (certificate != null)
             {
-                return storeInfo;
+                keyTypes.add(certificate.getPublicKey().getAlgorithm());
             }
         }
 
-        return null;
+        return keyTypes;
     }
 
-    // @return -1 if there is no slot for the given store
-    private int nextIndex(String store)
+    // hostname sha256/<base64 subject public key info hash>, one pin per line
+    private static Map<String, Set<ByteBuffer>> loadPins(
+        File pinsFile) throws IOException
     {
-        int storeIndex = Math.abs(store == null ? 1 : store.hashCode());
-        for (int i = 0; i < storeInfos.length; i++)
+        final Map<String, Set<ByteBuffer>> pins = new HashMap<>();
+
+        for (String line : Files.readAllLines(pinsFile.toPath()))
         {
-            storeIndex = (storeIndex + i) % storeInfos.length;
-            if (storeIndex != 0 && storeInfos[storeIndex] == null)
+            final String[] fields = line.trim().split("\\s+");
+            if (fields.length == 2 && !fields[0].startsWith("#") && fields[1].startsWith(PIN_SHA256_PREFIX))
             {
-                return storeIndex;
+                final String hostname = fields[0].toLowerCase(Locale.ROOT);
+                final byte[] hash = Base64.getDecoder().decode(fields[1].substring(PIN_SHA256_PREFIX.length()));
+                pins.computeIfAbsent(hostname, h -> new HashSet<>()).add(ByteBuffer.wrap(hash));
             }
         }
 
-        return -1;
+        return pins;
+    }
+
+    private static ThreadPoolExecutor newStoreLoadExecutor(
+        int threads)
+    {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1L, SECONDS,
+                new LinkedBlockingQueue<>(), r -> newDaemonThread(r, "tls-store-load"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static Thread newDaemonThread(
+        Runnable runnable,
+        String name)
+    {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void setPropertyIfAbsent(
+        String name,
+        String value)
+    {
+        if (getProperty(name) == null)
+        {
+            System.setProperty(name, value);
+        }
+    }
+
+    private static File resolve(
+        Path directory,
+        String store,
+        String storeFilename)
+    {
+        return resolve(directory, store).resolve(storeFilename).toFile();
+    }
+
+    private static Path resolve(
+        Path directory,
+        String store)
+    {
+        return store == null
+                ? directory.resolve("tls")
+                : directory.resolve("tls").resolve("stores").resolve(store);
     }
 
 }
@@ -0,0 +1,449 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.tls.internal.types.OctetsFW;
+import org.reaktivity.nukleus.tls.internal.types.StringFW;
+
+public final class TlsRouteIndex
+{
+    private static final TlsRouteInfo[] NO_ROUTES = new TlsRouteInfo[0];
+    private static final String WILDCARD_PREFIX = "*.";
+
+    private final Map<Long, TlsRouteInfo> routesById;   // route id -> route, in route order, updated by nukleus only
+    private volatile TlsRouteTable table;               // replaced only when resized
+    private long nextOrder;
+
+    public TlsRouteIndex()
+    {
+        this.routesById = new LinkedHashMap<>();
+        this.table = new TlsRouteTable(routesById);
+    }
+
+    public void add(
+        long routeId,
+        long authorization,
+        String store,
+        String hostname,
+        String protocol)
+    {
+        final TlsRouteInfo route = new TlsRouteInfo(routeId, authorization, store, hostname, protocol, nextOrder++);
+        final TlsRouteInfo previous = routesById.put(routeId, route);
+        if (previous != null)
+        {
+            table.remove(previous);
+        }
+
+        // only the route's bucket is copied, the whole table is rebuilt when doubling its capacity
+        if (routesById.size() > table.capacity())
+        {
+            table = new TlsRouteTable(routesById);
+        }
+        else
+        {
+            table.add(route);
+        }
+    }
+
+    public void remove(
+        long routeId)
+    {
+        final TlsRouteInfo route = routesById.remove(routeId);
+        if (route != null)
+        {
+            table.remove(route);
+        }
+    }
+
+    public TlsRouteInfo resolve(
+        long routeId,
+        long authorization,
+        StringFW hostname,
+        OctetsFW protocols)
+    {
+        DirectBuffer hostnameBuffer = null;
+        int hostnameOffset = 0;
+        int hostnameLength = -1;
+
+        if (hostname != null && hostname.length() != -1)
+        {
+            hostnameBuffer = hostname.buffer();
+            hostnameOffset = hostname.offset() + hostname.fieldSizeLength();
+            hostnameLength = hostname.length();
+        }
+
+        // no ALPN extension matches routes with or without protocol
+        return resolve(routeId, authorization, hostnameBuffer, hostnameOffset, hostnameLength, protocols, null, false);
+    }
+
+    public TlsRouteInfo resolve(
+        long routeId,
+        long authorization,
+        String hostname,
+        String protocol)
+    {
+        final DirectBuffer hostnameBuffer = hostname != null ? new UnsafeBuffer(hostname.getBytes(UTF_8)) : null;
+        final int hostnameLength = hostnameBuffer != null ? hostnameBuffer.capacity() : -1;
+
+        // negotiated protocol only matches routes with the same protocol, or without protocol
+        return resolve(routeId, authorization, hostnameBuffer, 0, hostnameLength, null, protocol, true);
+    }
+
+    private TlsRouteInfo resolve(
+        long routeId,
+        long authorization,
+        DirectBuffer hostnameBuffer,
+        int hostnameOffset,
+        int hostnameLength,
+        OctetsFW protocols,
+        String protocol,
+        boolean negotiated)
+    {
+        final TlsRouteTable table = this.table;
+        final int localId = remoteId(routeId);  // stream remote address is route local address
+
+        TlsRouteInfo[] hostnameRoutes = NO_ROUTES;
+        TlsRouteInfo[] wildcardRoutes = NO_ROUTES;
+        int parentOffset = 0;
+        int parentLength = -1;
+
+        if (hostnameBuffer != null)
+        {
+            hostnameRoutes = table.hostnameRoutes.get(hash(hostnameBuffer, hostnameOffset, hostnameLength) & table.mask);
+
+            // *.example.com matches a.example.com, but neither example.com nor a.b.example.com
+            final int dot = indexOf(hostnameBuffer, hostnameOffset, hostnameLength, (byte) '.');
+            if (dot != -1)
+            {
+                parentOffset = dot + 1;
+                parentLength = hostnameOffset + hostnameLength - parentOffset;
+                wildcardRoutes = table.wildcardRoutes.get(hash(hostnameBuffer, parentOffset, parentLength) & table.mask);
+            }
+        }
+
+        final TlsRouteInfo[] defaultRoutes = table.defaultRoutes;
+
+        TlsRouteInfo match = null;
+
+        // first match in route order across hostname, wildcard and default routes
+        for (int h = 0, w = 0, d = 0;
+             match == null && (h < hostnameRoutes.length || w < wildcardRoutes.length || d < defaultRoutes.length); )
+        {
+            final long hostnameOrder = h < hostnameRoutes.length ? hostnameRoutes[h].order : Long.MAX_VALUE;
+            final long wildcardOrder = w < wildcardRoutes.length ? wildcardRoutes[w].order : Long.MAX_VALUE;
+            final long defaultOrder = d < defaultRoutes.length ? defaultRoutes[d].order : Long.MAX_VALUE;
+
+            final TlsRouteInfo route;
+            final boolean matchesHostname;
+            if (hostnameOrder < wildcardOrder && hostnameOrder < defaultOrder)
+            {
+                route = hostnameRoutes[h++];
+                matchesHostname = route.matchesHostname(hostnameBuffer, hostnameOffset, hostnameLength);
+            }
+            else if (wildcardOrder < defaultOrder)
+            {
+                route = wildcardRoutes[w++];
+                matchesHostname = route.matchesHostname(hostnameBuffer, parentOffset, parentLength);
+            }
+            else
+            {
+                route = defaultRoutes[d++];
+                matchesHostname = true;
+            }
+
+            if (matchesHostname &&
+                route.matches(localId, authorization) &&
+                route.matchesProtocol(protocols, protocol, negotiated))
+            {
+                match = route;
+            }
+        }
+
+        return match;
+    }
+
+    private static int indexOf(
+        DirectBuffer buffer,
+        int offset,
+        int length,
+        byte value)
+    {
+        int index = -1;
+        for (int i = offset; index == -1 && i < offset + length; i++)
+        {
+            if (buffer.getByte(i) == value)
+            {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    // route host names are hashed as UTF-8 bytes, so lookups hash bytes too
+    private static int hash(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        int hash = 0;
+        for (int index = 0; index < length; index++)
+        {
+            hash = 31 * hash + buffer.getByte(offset + index);
+        }
+        return mix(hash);
+    }
+
+    private static int mix(
+        int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int localId(
+        long routeId)
+    {
+        return (int)(routeId >> 48) & 0xffff;
+    }
+
+    private static int remoteId(
+        long routeId)
+    {
+        return (int)(routeId >> 32) & 0xffff;
+    }
+
+    // buckets are replaced by copy on write, so resolve never sees a partially updated bucket
+    private static final class TlsRouteTable
+    {
+        private final AtomicReferenceArray<TlsRouteInfo[]> hostnameRoutes;  // by host name hash, in route order
+        private final AtomicReferenceArray<TlsRouteInfo[]> wildcardRoutes;  // by parent domain hash of *.domain, in route order
+        private volatile TlsRouteInfo[] defaultRoutes;                      // routes without host name, in route order
+        private final int mask;
+
+        private TlsRouteTable(
+            Map<Long, TlsRouteInfo> routesById)
+        {
+            final int capacity = Integer.highestOneBit(Math.max(routesById.size(), 1) << 1);
+            final TlsRouteInfo[][] hostnameRoutes = new TlsRouteInfo[capacity][];
+            final TlsRouteInfo[][] wildcardRoutes = new TlsRouteInfo[capacity][];
+            Arrays.fill(hostnameRoutes, NO_ROUTES);
+            Arrays.fill(wildcardRoutes, NO_ROUTES);
+
+            TlsRouteInfo[] defaultRoutes = NO_ROUTES;
+
+            for (TlsRouteInfo route : routesById.values())
+            {
+                if (route.hostname == null)
+                {
+                    defaultRoutes = append(defaultRoutes, route);
+                }
+                else
+                {
+                    final TlsRouteInfo[][] routes = route.wildcard ? wildcardRoutes : hostnameRoutes;
+                    final int index = hash(route.hostnameBuffer, 0, route.hostnameBuffer.capacity()) & (capacity - 1);
+                    routes[index] = append(routes[index], route);
+                }
+            }
+
+            this.hostnameRoutes = new AtomicReferenceArray<>(hostnameRoutes);
+            this.wildcardRoutes = new AtomicReferenceArray<>(wildcardRoutes);
+            this.defaultRoutes = defaultRoutes;
+            this.mask = capacity - 1;
+        }
+
+        private int capacity()
+        {
+            return mask + 1;
+        }
+
+        // routes are added in route order, so appending keeps each bucket in route order
+        private void add(
+            TlsRouteInfo route)
+        {
+            if (route.hostname == null)
+            {
+                defaultRoutes = append(defaultRoutes, route);
+            }
+            else
+            {
+                final AtomicReferenceArray<TlsRouteInfo[]> routes = route.wildcard ? wildcardRoutes : hostnameRoutes;
+                final int index = index(route);
+                routes.set(index, append(routes.get(index), route));
+            }
+        }
+
+        private void remove(
+            TlsRouteInfo route)
+        {
+            if (route.hostname == null)
+            {
+                defaultRoutes = remove(defaultRoutes, route);
+            }
+            else
+            {
+                final AtomicReferenceArray<TlsRouteInfo[]> routes = route.wildcard ? wildcardRoutes : hostnameRoutes;
+                final int index = index(route);
+                routes.set(index, remove(routes.get(index), route));
+            }
+        }
+
+        private int index(
+            TlsRouteInfo route)
+        {
+            return hash(route.hostnameBuffer, 0, route.hostnameBuffer.capacity()) & mask;
+        }
+
+        private static TlsRouteInfo[] append(
+            TlsRouteInfo[] routes,
+            TlsRouteInfo route)
+        {
+            final TlsRouteInfo[] newRoutes = Arrays.copyOf(routes, routes.length + 1);
+            newRoutes[routes.length] = route;
+            return newRoutes;
+        }
+
+        private static TlsRouteInfo[] remove(
+            TlsRouteInfo[] routes,
+            TlsRouteInfo route)
+        {
+            TlsRouteInfo[] newRoutes = routes;
+
+            for (int index = 0; index < routes.length; index++)
+            {
+                if (routes[index] == route)
+                {
+                    newRoutes = routes.length == 1 ? NO_ROUTES : new TlsRouteInfo[routes.length - 1];
+                    System.arraycopy(routes, 0, newRoutes, 0, index);
+                    System.arraycopy(routes, index + 1, newRoutes, index, routes.length - index - 1);
+                    break;
+                }
+            }
+
+            return newRoutes;
+        }
+    }
+
+    public static final class TlsRouteInfo
+    {
+        public final long routeId;
+        public final String store;
+        public final String hostname;
+        public final String protocol;
+        public final boolean wildcard;
+
+        private final int localId;
+        private final long authorization;
+        private final long order;
+        private final DirectBuffer hostnameBuffer;      // parent domain for *.domain
+        private final DirectBuffer protocolBuffer;
+
+        private TlsRouteInfo(
+            long routeId,
+            long authorization,
+            String store,
+            String hostname,
+            String protocol,
+            long order)
+        {
+            this.routeId = routeId;
+            this.localId = localId(routeId);
+            this.authorization = authorization;
+            this.store = store;
+            this.hostname = hostname;
+            this.protocol = protocol;
+            this.order = order;
+            this.wildcard = hostname != null && hostname.startsWith(WILDCARD_PREFIX);
+            this.hostnameBuffer = hostname != null
+                    ? new UnsafeBuffer((wildcard ? hostname.substring(WILDCARD_PREFIX.length()) : hostname).getBytes(UTF_8))
+                    : null;
+            this.protocolBuffer = protocol != null ? new UnsafeBuffer(protocol.getBytes(UTF_8)) : null;
+        }
+
+        private boolean matches(
+            int localId,
+            long authorization)
+        {
+            return this.localId == localId &&
+                    (authorization & this.authorization) == this.authorization;
+        }
+
+        private boolean matchesHostname(
+            DirectBuffer buffer,
+            int offset,
+            int length)
+        {
+            return length == hostnameBuffer.capacity() && equals(hostnameBuffer, buffer, offset, length);
+        }
+
+        private boolean matchesProtocol(
+            OctetsFW protocols,
+            String protocol,
+            boolean negotiated)
+        {
+            return this.protocol == null ||
+                   (negotiated ? this.protocol.equals(protocol) : protocols == null || matchesProtocols(protocols));
+        }
+
+        // ALPN protocol name list, each name prefixed by 8-bit length
+        private boolean matchesProtocols(
+            OctetsFW protocols)
+        {
+            final DirectBuffer buffer = protocols.buffer();
+            final int limit = protocols.limit();
+            final int protocolLength = protocolBuffer.capacity();
+
+            boolean matches = false;
+            for (int offset = protocols.offset(); !matches && offset < limit; )
+            {
+                final int length = buffer.getByte(offset) & 0xff;
+                matches = length != 0 && length == protocolLength && offset + 1 + length <= limit &&
+                        equals(protocolBuffer, buffer, offset + 1, length);
+                offset += 1 + length;
+            }
+
+            return matches;
+        }
+
+        private static boolean equals(
+            DirectBuffer expected,
+            DirectBuffer buffer,
+            int offset,
+            int length)
+        {
+            int index = 0;
+            while (index < length && expected.getByte(index) == buffer.getByte(offset + index))
+            {
+                index++;
+            }
+            return index == length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s [routeId=%d, store=%s, hostname=%s, protocol=%s]",
+                    getClass().getSimpleName(), routeId, store, hostname, protocol);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.StandardConstants;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+final class TlsSniKeyManager extends X509ExtendedKeyManager
+{
+    private static final int SUBJECT_ALT_NAME_DNS = 2;
+
+    private final X509ExtendedKeyManager delegate;
+    private final Map<String, List<KeyEntry>> entriesByHostname;   // exact hostname -> key entries
+    private final Map<String, List<KeyEntry>> entriesByWildcard;   // parent domain of *.domain -> key entries
+    private final Map<String, KeyEntry> entriesByAlias;
+
+    TlsSniKeyManager(
+        X509ExtendedKeyManager delegate,
+        KeyStore keyStore,
+        char[] password) throws Exception
+    {
+        this.delegate = delegate;
+        this.entriesByHostname = new HashMap<>();
+        this.entriesByWildcard = new HashMap<>();
+        this.entriesByAlias = new HashMap<>();
+
+        for (String alias : Collections.list(keyStore.aliases()))
+        {
+            if (keyStore.isKeyEntry(alias))
+            {
+                final Certificate[] chain = keyStore.getCertificateChain(alias);
+                if (chain != null && chain.length > 0 && chain[0] instanceof X509Certificate)
+                {
+                    final X509Certificate[] x509Chain = new X509Certificate[chain.length];
+                    System.arraycopy(chain, 0, x509Chain, 0, chain.length);
+
+                    final PrivateKey key = (PrivateKey) keyStore.getKey(alias, password);
+                    final KeyEntry entry = new KeyEntry(alias, key, x509Chain);
+                    entriesByAlias.put(alias, entry);
+
+                    for (String hostname : hostnames(x509Chain[0]))
+                    {
+                        final String name = hostname.toLowerCase(Locale.ROOT);
+                        if (name.startsWith("*."))
+                        {
+                            entriesByWildcard.computeIfAbsent(name.substring(2), n -> new ArrayList<>()).add(entry);
+                        }
+                        else
+                        {
+                            entriesByHostname.computeIfAbsent(name, n -> new ArrayList<>()).add(entry);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String chooseEngineServerAlias(
+        String keyType,
+        Principal[] issuers,
+        SSLEngine engine)
+    {
+        final String hostname = requestedHostname(engine);
+
+        String alias = null;
+        boolean matched = false;
+        if (hostname != null)
+        {
+            final List<KeyEntry> entries = entriesByHostname.get(hostname);
+            alias = chooseAlias(entries, keyType, issuers);
+            matched = entries != null;
+
+            final int dot = hostname.indexOf('.');
+            if (alias == null && dot != -1)
+            {
+                final List<KeyEntry> wildcardEntries = entriesByWildcard.get(hostname.substring(dot + 1));
+                alias = chooseAlias(wildcardEntries, keyType, issuers);
+                matched |= wildcardEntries != null;
+            }
+        }
+
+        // hostname served by this store without this key type, never another hostname's certificate
+        return alias != null || matched ? alias : delegate.chooseEngineServerAlias(keyType, issuers, engine);
+    }
+
+    @Override
+    public String chooseServerAlias(
+        String keyType,
+        Principal[] issuers,
+        Socket socket)
+    {
+        return delegate.chooseServerAlias(keyType, issuers, socket);
+    }
+
+    @Override
+    public String chooseEngineClientAlias(
+        String[] keyTypes,
+        Principal[] issuers,
+        SSLEngine engine)
+    {
+        return delegate.chooseEngineClientAlias(keyTypes, issuers, engine);
+    }
+
+    @Override
+    public String chooseClientAlias(
+        String[] keyTypes,
+        Principal[] issuers,
+        Socket socket)
+    {
+        return delegate.chooseClientAlias(keyTypes, issuers, socket);
+    }
+
+    @Override
+    public String[] getServerAliases(
+        String keyType,
+        Principal[] issuers)
+    {
+        return delegate.getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public String[] getClientAliases(
+        String keyType,
+        Principal[] issuers)
+    {
+        return delegate.getClientAliases(keyType, issuers);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(
+        String alias)
+    {
+        final KeyEntry entry = entriesByAlias.get(alias);
+        return entry != null ? entry.chain.clone() : delegate.getCertificateChain(alias);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(
+        String alias)
+    {
+        final KeyEntry entry = entriesByAlias.get(alias);
+        return entry != null ? entry.key : delegate.getPrivateKey(alias);
+    }
+
+    // ranked as SunJSSE X509KeyManagerImpl, currently valid before expired, then issuer match, then keystore order
+    private static String chooseAlias(
+        List<KeyEntry> entries,
+        String keyType,
+        Principal[] issuers)
+    {
+        String alias = null;
+
+        if (entries != null)
+        {
+            final Date now = new Date();
+            int aliasRank = Integer.MAX_VALUE;
+            for (int i = 0; aliasRank != 0 && i < entries.size(); i++)
+            {
+                final KeyEntry entry = entries.get(i);
+                if (entry.keyType.equals(keyType))
+                {
+                    final int rank = (entry.isValid(now) ? 0 : 2) + (entry.isIssuedBy(issuers) ? 0 : 1);
+                    if (rank < aliasRank)
+                    {
+                        alias = entry.alias;
+                        aliasRank = rank;
+                    }
+                }
+            }
+        }
+
+        return alias;
+    }
+
+    private static String requestedHostname(
+        SSLEngine engine)
+    {
+        String hostname = null;
+
+        final SSLSession session = engine != null ? engine.getHandshakeSession() : null;
+        if (session instanceof ExtendedSSLSession)
+        {
+            for (SNIServerName serverName : ((ExtendedSSLSession) session).getRequestedServerNames())
+            {
+                if (serverName.getType() == StandardConstants.SNI_HOST_NAME)
+                {
+                    hostname = ((SNIHostName) serverName).getAsciiName().toLowerCase(Locale.ROOT);
+                    break;
+                }
+            }
+        }
+
+        return hostname;
+    }
+
+    private static List<String> hostnames(
+        X509Certificate certificate) throws Exception
+    {
+        final List<String> hostnames = new ArrayList<>();
+
+        final Collection<List<?>> subjectAltNames = certificate.getSubjectAlternativeNames();
+        if (subjectAltNames != null)
+        {
+            for (List<?> subjectAltName : subjectAltNames)
+            {
+                if (((Integer) subjectAltName.get(0)) == SUBJECT_ALT_NAME_DNS)
+                {
+                    hostnames.add((String) subjectAltName.get(1));
+                }
+            }
+        }
+
+        if (hostnames.isEmpty())
+        {
+            final LdapName subject = new LdapName(certificate.getSubjectX500Principal().getName());
+            for (Rdn rdn : subject.getRdns())
+            {
+                if ("CN".equalsIgnoreCase(rdn.getType()))
+                {
+                    hostnames.add(rdn.getValue().toString());
+                }
+            }
+        }
+
+        return hostnames;
+    }
+
+    private static final class KeyEntry
+    {
+        private final String alias;
+        private final String keyType;
+        private final PrivateKey key;
+        private final X509Certificate[] chain;
+
+        private KeyEntry(
+            String alias,
+            PrivateKey key,
+            X509Certificate[] chain)
+        {
+            this.alias = alias;
+            this.keyType = chain[0].getPublicKey().getAlgorithm();
+            this.key = key;
+            this.chain = chain;
+        }
+
+        private boolean isValid(
+            Date now)
+        {
+            boolean valid = true;
+            try
+            {
+                chain[0].checkValidity(now);
+            }
+            catch (CertificateException ex)
+            {
+                valid = false;
+            }
+            return valid;
+        }
+
+        private boolean isIssuedBy(
+            Principal[] issuers)
+        {
+            boolean issued = issuers == null || issuers.length == 0;
+            for (int i = 0; !issued && i < issuers.length; i++)
+            {
+                for (int j = 0; !issued && j < chain.length; j++)
+                {
+                    issued = issuers[i].equals(chain[j].getIssuerX500Principal());
+                }
+            }
+            return issued;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import java.util.Set;
+
+import javax.net.ssl.SSLContext;
+
+final class TlsStoreContext
+{
+    final SSLContext context;
+    final boolean supportsClientAuth;
+    final Set<String> caDnames;
+    final String[] protocols;       // null for JSSE defaults
+    final String[] cipherSuites;    // in server preference order, null for JSSE defaults
+    final String[] namedGroups;     // in preference order, null for JSSE defaults or process wide jdk.tls.namedGroups
+
+    TlsStoreContext(
+        SSLContext context,
+        boolean supportsClientAuth,
+        Set<String> caDnames,
+        String[] protocols,
+        String[] cipherSuites,
+        String[] namedGroups)
+    {
+        this.context = context;
+        this.supportsClientAuth = supportsClientAuth;
+        this.caDnames = caDnames;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+        this.namedGroups = namedGroups;
+    }
+}
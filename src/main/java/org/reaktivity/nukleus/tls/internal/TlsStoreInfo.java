@@ -15,77 +15,503 @@
  */
 package org.reaktivity.nukleus.tls.internal;
 
+import java.nio.ByteBuffer;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.security.auth.x500.X500Principal;
+
+import org.agrona.collections.Long2ObjectHashMap;
 
 public class TlsStoreInfo
 {
-    private static final long MAX_AUTHORIZATION = 1L << 56;
+    private static final String SESSION_AUTHORIZATION = "org.reaktivity.nukleus.tls.authorization";
+    private static final int MAXIMUM_CLIENT_PEER_PORT = 65535;
+    private static final int SHARED_CLIENT_PEER_PORT = 0;
+
     public final String store;
-    public final SSLContext context;
-    private final Map<String, Long> authorizationMap;   // dn -> authorization (1st byte store index + 7 bytes for dn index)
-    private final Set<String> caDnames;
-    public final boolean supportsClientAuth;
+    private final Map<String, Long> authorizationMap;   // dn -> authorization (store index + ca code)
+    private final Long2ObjectHashMap<String> dnamesByAuthorization;
+    private final Map<ByteBuffer, EpochAuthorization> authorizationsByIssuer;   // encoded issuer principal -> authorization
     public final int storeIndex;
+    private final int serverEnginePoolSize;
+    private final Executor serverEnginePoolExecutor;
+    private final Queue<PooledEngine> serverEngines;    // pre-configured server engines, refilled in background
+    private final AtomicInteger serverEngineCount;
+    private final AtomicBoolean serverEngineRefilling;
+    private final TlsStoreLoader storeLoader;
+    private final Map<Long, Integer> clientPeerPorts;  // network route id -> engine peer port, unique per store
+    private final AtomicInteger clientPeerPortIds;
+    private final Queue<Integer> freeClientPeerPorts;  // released by unrouted network routes, reused first
+
+    private volatile TlsStoreContext storeContext;     // replaced as a whole on reload, null while not loaded
+    private volatile CompletableFuture<TlsStoreContext> pending;   // load of a routed store, published on completion
+    private volatile boolean lazy;
+    private volatile long accessedAt;
+    private final AtomicInteger authorizationEpoch;     // invalidates cached authorizations on unresolve or reload
 
     int routeCount;
-    private long authorization = 1L;
+    private final TlsAuthorizationEncoding authorizationEncoding;
+    private long caRank;
 
     TlsStoreInfo(
         String store,
         int storeIndex,
-        SSLContext context,
-        boolean supportsClientAuth,
-        Set<String> caDnames)
+        TlsStoreContext storeContext,
+        int serverEnginePoolSize,
+        Executor serverEnginePoolExecutor,
+        TlsStoreLoader storeLoader,
+        TlsAuthorizationEncoding authorizationEncoding)
     {
         this.store = store;
         this.storeIndex = storeIndex;
-        this.context = context;
-        this.caDnames = caDnames;
+        this.storeContext = storeContext;
         this.authorizationMap = new LinkedHashMap<>();
-        this.supportsClientAuth = supportsClientAuth;
+        this.dnamesByAuthorization = new Long2ObjectHashMap<>();
+        this.authorizationEncoding = authorizationEncoding;
+        this.authorizationsByIssuer = new ConcurrentHashMap<>();
+        this.authorizationEpoch = new AtomicInteger();
+        this.serverEnginePoolSize = serverEnginePoolSize;
+        this.serverEnginePoolExecutor = serverEnginePoolExecutor;
+        this.serverEngines = new ConcurrentLinkedQueue<>();
+        this.serverEngineCount = new AtomicInteger();
+        this.serverEngineRefilling = new AtomicBoolean();
+        this.storeLoader = storeLoader;
+        this.clientPeerPorts = new ConcurrentHashMap<>();
+        this.clientPeerPortIds = new AtomicInteger();
+        this.freeClientPeerPorts = new ConcurrentLinkedQueue<>();
+        this.lazy = storeContext == null;
+
+        refillServerEnginesIfNecessary();
+    }
+
+    // @return null if lazy store not yet loaded, or evicted
+    public SSLContext context()
+    {
+        final TlsStoreContext storeContext = this.storeContext;
+        return storeContext != null ? storeContext.context : null;
+    }
+
+    // blocks the calling thread, not for use on I/O threads
+    public void load()
+    {
+        try
+        {
+            storeLoader.materialize(this);
+        }
+        catch (RuntimeException ex)
+        {
+            // handshake fails when context is still missing
+        }
+    }
+
+    public void touch()
+    {
+        accessedAt = System.nanoTime();
+    }
+
+    // @return null if lazy store not yet loaded, or evicted
+    public SSLEngine newServerEngine()
+    {
+        final TlsStoreContext storeContext = this.storeContext;
+        return storeContext != null ? newServerEngine(storeContext) : null;
+    }
+
+    // @return null if store not loaded
+    // client sessions are cached by host and port, so each network route gets its own port
+    // sessions of routes without a host name are not cached by JSSE
+    public SSLEngine newClientEngine(
+        String hostname,
+        long networkRouteId)
+    {
+        final TlsStoreContext storeContext = this.storeContext;
+        if (storeContext == null)
+        {
+            return null;
+        }
+
+        final int port = clientPeerPort(networkRouteId);
+        final SSLEngine engine = storeContext.context.createSSLEngine(hostname, port);
+        engine.setUseClientMode(true);
+        configurePolicy(engine, storeContext);
+        return engine;
+    }
+
+    // @return peer port of the network route, shared once all ports are in use by routed network routes of this store
+    int clientPeerPort(
+        long networkRouteId)
+    {
+        return clientPeerPorts.computeIfAbsent(networkRouteId, r -> nextClientPeerPort());
+    }
+
+    // port reused by the next network route, which may resume sessions cached under it with the same store context
+    void releaseClientPeerPort(
+        long networkRouteId)
+    {
+        final Integer port = clientPeerPorts.remove(networkRouteId);
+        if (port != null && port != SHARED_CLIENT_PEER_PORT)
+        {
+            freeClientPeerPorts.offer(port);
+        }
+    }
+
+    // @return pre-configured server engine, or null if pool disabled or empty
+    public SSLEngine pollServerEngine()
+    {
+        final TlsStoreContext storeContext = this.storeContext;
+
+        SSLEngine engine = null;
+        for (PooledEngine pooled = serverEngines.poll(); pooled != null; pooled = serverEngines.poll())
+        {
+            serverEngineCount.decrementAndGet();
+
+            // engines built from the context before a reload or eviction are discarded
+            if (pooled.storeContext == storeContext)
+            {
+                engine = pooled.engine;
+                break;
+            }
+        }
+
+        refillServerEnginesIfNecessary();
+
+        return engine;
+    }
+
+    // @return authorization of the client certificate issuer, reused by resumptions of the same session
+    public long authorization(
+        SSLSession session) throws SSLPeerUnverifiedException
+    {
+        final int epoch = authorizationEpoch.get();
+        final Object value = session.getValue(SESSION_AUTHORIZATION);
+        if (value instanceof EpochAuthorization && ((EpochAuthorization) value).epoch == epoch)
+        {
+            return ((EpochAuthorization) value).authorization;
+        }
+
+        long issuerAuthorization = 0L;
+
+        final Certificate[] certs = session.getPeerCertificates();
+        if (certs.length > 1)
+        {
+            final X509Certificate signingCaCert = (X509Certificate) certs[1];
+            issuerAuthorization = authorization(signingCaCert.getSubjectX500Principal());
+        }
+
+        session.putValue(SESSION_AUTHORIZATION, new EpochAuthorization(issuerAuthorization, epoch));
+
+        return issuerAuthorization;
+    }
+
+    public long authorization(
+        X500Principal issuer)
+    {
+        final ByteBuffer encoded = ByteBuffer.wrap(issuer.getEncoded());
+        final int epoch = authorizationEpoch.get();
+
+        // computed before a concurrent unresolve or reload is cached with the previous epoch, so never served
+        EpochAuthorization auth = authorizationsByIssuer.get(encoded);
+        if (auth == null || auth.epoch != epoch)
+        {
+            auth = new EpochAuthorization(authorization(issuer.getName()), epoch);
+            authorizationsByIssuer.put(encoded, auth);
+        }
+
+        return auth.authorization;
     }
 
     public long authorization(String dname)
     {
         Long auth = null;
 
-        if (caDnames.contains(dname))
+        final TlsStoreContext storeContext = this.storeContext;
+        if (storeIndex != TlsStoreRegistry.NO_STORE_INDEX && storeContext != null && storeContext.caDnames.contains(dname))
         {
-            auth = authorizationMap.computeIfAbsent(dname, dn ->
+            synchronized (authorizationMap)
             {
-                //  0           7                                63
-                // +-------------+---------------------------------+
-                // | store index |          ca bit                 |
-                // +-------------+---------------------------------+
-
-                if (authorization < MAX_AUTHORIZATION)
+                auth = authorizationMap.computeIfAbsent(dname, dn ->
                 {
-                    long routeAuthorization = ((long) storeIndex << 56) | authorization;
-                    authorization *= 2;
-                    return routeAuthorization;
-                }
-                else
-                {
-                    // more than 56 ca certs, cannot fit in 7 bytes
-                    return null;
-                }
-            });
+                    if (caRank < authorizationEncoding.caCapacity())
+                    {
+                        long routeAuthorization = authorizationEncoding.encode(storeIndex, caRank);
+                        caRank++;
+                        dnamesByAuthorization.put(routeAuthorization, dn);
+                        return routeAuthorization;
+                    }
+                    else
+                    {
+                        // ca codes exhausted, codes are not reused while routes may still hold them
+                        return null;
+                    }
+                });
+            }
         }
         return auth == null ? 0L : auth;
     }
 
+    // existing connections keep their engines, new handshakes use the reloaded context
+    void reload(
+        TlsStoreContext storeContext)
+    {
+        // sessions and pooled engines belong to the previous context
+        synchronized (this)
+        {
+            if (this.storeContext == null && lazy)
+            {
+                // evicted lazy store, loads again on demand
+                return;
+            }
+
+            this.storeContext = storeContext;
+        }
+
+        invalidateAuthorizations();
+        drainServerEngines();
+        refillServerEnginesIfNecessary();
+    }
+
+    // @return true if the context was loaded and published by this call
+    boolean materializeIfNecessary(
+        Function<String, TlsStoreContext> loadStore)
+    {
+        boolean materialized = false;
+
+        if (storeContext == null)
+        {
+            // load without holding the monitor, reload and evict wait for it otherwise
+            final CompletableFuture<TlsStoreContext> pending = this.pending;
+            final TlsStoreContext loaded = pending != null && !pending.isCompletedExceptionally()
+                    ? pending.join()
+                    : loadStore.apply(store);
+
+            materialized = publish(loaded);
+        }
+
+        return materialized;
+    }
+
+    // routed without waiting for the load, handshakes before completion wait for it in their load task
+    void complete(
+        CompletableFuture<TlsStoreContext> load)
+    {
+        pending = load;
+        load.thenAccept(this::publish);
+    }
+
+    boolean loading()
+    {
+        final CompletableFuture<TlsStoreContext> pending = this.pending;
+        return pending != null && !pending.isDone();
+    }
+
+    // existing connections keep their engines
+    void evict()
+    {
+        synchronized (this)
+        {
+            storeContext = null;
+        }
+
+        drainServerEngines();
+    }
+
+    void pin()
+    {
+        lazy = false;
+    }
+
+    boolean lazy()
+    {
+        return lazy;
+    }
+
+    long accessedAt()
+    {
+        return accessedAt;
+    }
+
     public boolean unresolve(long authorization)
     {
-        return authorizationMap.entrySet().removeIf(e -> e.getValue() == authorization);
+        invalidateAuthorizations();
+
+        synchronized (authorizationMap)
+        {
+            final String dname = dnamesByAuthorization.remove(authorization);
+            return dname != null && authorizationMap.remove(dname) != null;
+        }
+    }
+
+    private void invalidateAuthorizations()
+    {
+        authorizationEpoch.incrementAndGet();
+        authorizationsByIssuer.clear();
+    }
+
+    private void drainServerEngines()
+    {
+        while (serverEngines.poll() != null)
+        {
+            serverEngineCount.decrementAndGet();
+        }
+    }
+
+    private void refillServerEnginesIfNecessary()
+    {
+        if (storeContext != null &&
+            serverEngineCount.get() < serverEnginePoolSize &&
+            serverEngineRefilling.compareAndSet(false, true))
+        {
+            try
+            {
+                serverEnginePoolExecutor.execute(this::refillServerEngines);
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // nukleus closed, handshakes build engines on demand
+                serverEngineRefilling.set(false);
+            }
+        }
+    }
+
+    private void refillServerEngines()
+    {
+        try
+        {
+            while (serverEngineCount.get() < serverEnginePoolSize)
+            {
+                final TlsStoreContext storeContext = this.storeContext;
+                if (storeContext == null)
+                {
+                    break;
+                }
+
+                serverEngines.offer(new PooledEngine(newServerEngine(storeContext), storeContext));
+                serverEngineCount.incrementAndGet();
+            }
+        }
+        finally
+        {
+            serverEngineRefilling.set(false);
+        }
+    }
+
+    private static SSLEngine newServerEngine(
+        TlsStoreContext storeContext)
+    {
+        final SSLEngine engine = storeContext.context.createSSLEngine();
+        engine.setUseClientMode(false);
+        if (storeContext.supportsClientAuth)
+        {
+            engine.setWantClientAuth(true);
+        }
+        configurePolicy(engine, storeContext);
+        return engine;
+    }
+
+    private static void configurePolicy(
+        SSLEngine engine,
+        TlsStoreContext storeContext)
+    {
+        if (storeContext.protocols != null || storeContext.cipherSuites != null || storeContext.namedGroups != null)
+        {
+            final SSLParameters parameters = engine.getSSLParameters();
+            if (storeContext.protocols != null)
+            {
+                parameters.setProtocols(storeContext.protocols);
+            }
+            if (storeContext.cipherSuites != null)
+            {
+                parameters.setCipherSuites(storeContext.cipherSuites);
+                parameters.setUseCipherSuitesOrder(true);
+            }
+            if (storeContext.namedGroups != null)
+            {
+                TlsNamedGroups.set(parameters, storeContext.namedGroups);
+            }
+            engine.setSSLParameters(parameters);
+        }
+    }
+
+    private boolean publish(
+        TlsStoreContext loaded)
+    {
+        boolean published;
+
+        synchronized (this)
+        {
+            published = storeContext == null && loaded != null;
+            if (published)
+            {
+                storeContext = loaded;
+            }
+        }
+
+        if (published)
+        {
+            refillServerEnginesIfNecessary();
+        }
+
+        return published;
+    }
+
+    private int nextClientPeerPort()
+    {
+        Integer port = freeClientPeerPorts.poll();
+        if (port == null)
+        {
+            final int portId = clientPeerPortIds.updateAndGet(id -> Math.min(id + 1, MAXIMUM_CLIENT_PEER_PORT + 1));
+            port = portId <= MAXIMUM_CLIENT_PEER_PORT ? portId : SHARED_CLIENT_PEER_PORT;
+        }
+        return port;
+    }
+
+    private static final class PooledEngine
+    {
+        private final SSLEngine engine;
+        private final TlsStoreContext storeContext;
+
+        private PooledEngine(
+            SSLEngine engine,
+            TlsStoreContext storeContext)
+        {
+            this.engine = engine;
+            this.storeContext = storeContext;
+        }
+    }
+
+    private static final class EpochAuthorization
+    {
+        private final long authorization;
+        private final int epoch;
+
+        private EpochAuthorization(
+            long authorization,
+            int epoch)
+        {
+            this.authorization = authorization;
+            this.epoch = epoch;
+        }
     }
 
     @Override
     public String toString()
     {
-        return String.format("store=%s authorization=%s", store, authorization);
+        return String.format("store=%s authorizations=%d", store, caRank);
     }
 }
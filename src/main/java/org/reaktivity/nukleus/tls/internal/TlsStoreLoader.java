@@ -0,0 +1,283 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+public final class TlsStoreLoader implements AutoCloseable
+{
+    private final Function<String, TlsStoreContext> loadStore;
+    private final Executor executor;
+    private final Map<String, CompletableFuture<TlsStoreContext>> loads;   // store -> unclaimed preload
+    private final int lazyCapacity;
+    private final List<TlsStoreInfo> lazyLoaded;                            // lazy stores with a loaded context
+
+    private TlsCounters counters;
+    private long pendingLoads;
+    private long pendingFailures;
+    private long pendingNanos;
+    private long pendingEvictions;
+    private long pendingIndexExhaustions;
+    private long pendingReloadFailures;
+
+    TlsStoreLoader(
+        Function<String, TlsStoreContext> loadStore,
+        Executor executor,
+        int lazyCapacity)
+    {
+        this.loadStore = loadStore;
+        this.executor = executor;
+        this.loads = new HashMap<>();
+        this.lazyCapacity = lazyCapacity;
+        this.lazyLoaded = new ArrayList<>();
+    }
+
+    // starts loading the default store and every store under tls/stores in parallel, requires executor
+    // preloads not claimed by a route within retainMillis of completing are released, and load again on route
+    synchronized void preload(
+        Path directory,
+        long retainMillis)
+    {
+        final Path tls = directory.resolve("tls");
+        if (Files.isDirectory(tls))
+        {
+            loads.put(null, loadAsync(null));
+        }
+
+        final Path stores = tls.resolve("stores");
+        if (Files.isDirectory(stores))
+        {
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(stores, Files::isDirectory))
+            {
+                for (Path path : paths)
+                {
+                    final String store = path.getFileName().toString();
+                    loads.put(store, loadAsync(store));
+                }
+            }
+            catch (IOException ex)
+            {
+                // stores not preloaded are loaded on first route
+            }
+        }
+
+        if (!loads.isEmpty())
+        {
+            final List<CompletableFuture<TlsStoreContext>> preloads = new ArrayList<>(loads.values());
+            allOf(preloads.toArray(new CompletableFuture<?>[0]))
+                .whenCompleteAsync((r, ex) -> release(preloads), delayedExecutor(retainMillis, MILLISECONDS));
+        }
+    }
+
+    // @return preloaded or newly started load of the store, loaded on the calling thread without executor
+    synchronized CompletableFuture<TlsStoreContext> claim(
+        String store)
+    {
+        CompletableFuture<TlsStoreContext> load = loads.remove(store);
+        if (load == null)
+        {
+            load = executor != null
+                    ? loadAsync(store)
+                    : completedFuture(store).thenApply(this::load);
+        }
+        return load;
+    }
+
+    synchronized boolean preloaded(
+        String store)
+    {
+        return loads.containsKey(store);
+    }
+
+    // loads a lazy store context, evicting the least recently accessed lazy stores beyond capacity
+    void materialize(
+        TlsStoreInfo storeInfo)
+    {
+        if (storeInfo.materializeIfNecessary(this::load) && storeInfo.lazy())
+        {
+            evictIfNecessary(storeInfo);
+        }
+    }
+
+    // changed store kept its previous context, called from the store watcher thread
+    synchronized void reloadFailed()
+    {
+        if (counters != null)
+        {
+            counters.storeReloadFailures.accept(1L);
+        }
+        else
+        {
+            pendingReloadFailures++;
+        }
+    }
+
+    // controller thread only, unclaimed preloads are cancelled
+    @Override
+    public synchronized void close()
+    {
+        if (executor instanceof ExecutorService)
+        {
+            ((ExecutorService) executor).shutdownNow();
+        }
+
+        loads.values().forEach(load -> load.cancel(false));
+    }
+
+    private synchronized void release(
+        List<CompletableFuture<TlsStoreContext>> preloads)
+    {
+        loads.values().removeAll(preloads);
+    }
+
+    synchronized void release(
+        TlsStoreInfo storeInfo)
+    {
+        lazyLoaded.remove(storeInfo);
+    }
+
+    public synchronized void bind(
+        TlsCounters counters)
+    {
+        if (this.counters == null)
+        {
+            this.counters = counters;
+            report(pendingLoads, pendingFailures, pendingNanos);
+            counters.storeEvictions.accept(pendingEvictions);
+            counters.storeIndexExhaustions.accept(pendingIndexExhaustions);
+            counters.storeReloadFailures.accept(pendingReloadFailures);
+            pendingLoads = 0L;
+            pendingFailures = 0L;
+            pendingNanos = 0L;
+            pendingEvictions = 0L;
+            pendingIndexExhaustions = 0L;
+            pendingReloadFailures = 0L;
+        }
+    }
+
+    // store routed without a store index, its mTLS peers cannot be authorized
+    synchronized void indexExhausted()
+    {
+        if (counters != null)
+        {
+            counters.storeIndexExhaustions.accept(1L);
+        }
+        else
+        {
+            pendingIndexExhaustions++;
+        }
+    }
+
+    private synchronized void evictIfNecessary(
+        TlsStoreInfo loaded)
+    {
+        lazyLoaded.removeIf(s -> !s.lazy() || s.context() == null);
+        lazyLoaded.add(loaded);
+
+        while (lazyCapacity > 0 && lazyLoaded.size() > lazyCapacity)
+        {
+            TlsStoreInfo idlest = null;
+            for (TlsStoreInfo storeInfo : lazyLoaded)
+            {
+                if (storeInfo != loaded && (idlest == null || storeInfo.accessedAt() - idlest.accessedAt() < 0L))
+                {
+                    idlest = storeInfo;
+                }
+            }
+
+            lazyLoaded.remove(idlest);
+            idlest.evict();
+
+            if (counters != null)
+            {
+                counters.storeEvictions.accept(1L);
+            }
+            else
+            {
+                pendingEvictions++;
+            }
+        }
+    }
+
+    private CompletableFuture<TlsStoreContext> loadAsync(
+        String store)
+    {
+        return supplyAsync(() -> load(store), executor);
+    }
+
+    private TlsStoreContext load(
+        String store)
+    {
+        final long startNanos = System.nanoTime();
+        boolean failed = true;
+
+        try
+        {
+            final TlsStoreContext storeContext = loadStore.apply(store);
+            failed = false;
+            return storeContext;
+        }
+        finally
+        {
+            record(System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    private synchronized void record(
+        long nanos,
+        boolean failed)
+    {
+        final long failures = failed ? 1L : 0L;
+
+        if (counters != null)
+        {
+            report(1L, failures, nanos);
+        }
+        else
+        {
+            pendingLoads++;
+            pendingFailures += failures;
+            pendingNanos += nanos;
+        }
+    }
+
+    private void report(
+        long loads,
+        long failures,
+        long nanos)
+    {
+        counters.storeLoads.accept(loads);
+        counters.storeLoadFailures.accept(failures);
+        counters.storeLoadNanos.accept(nanos);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class TlsStoreRegistry
+{
+    static final int NO_STORE_INDEX = 0;
+
+    private final Map<String, TlsStoreInfo> storesByName;
+    private final TlsStoreInfo[] storesByIndex;   // store index in authorization, controller thread only
+    private volatile TlsStoreInfo defaultStore;
+
+    TlsStoreRegistry(
+        int indexCapacity)
+    {
+        this.storesByName = new ConcurrentHashMap<>();
+        this.storesByIndex = new TlsStoreInfo[indexCapacity];
+    }
+
+    // safe to call from any thread
+    TlsStoreInfo find(
+        String store)
+    {
+        return store == null ? defaultStore : storesByName.get(store);
+    }
+
+    TlsStoreInfo findByIndex(
+        int storeIndex)
+    {
+        return storesByIndex[storeIndex];
+    }
+
+    // @return NO_STORE_INDEX if there is no index left for the given store
+    int nextIndex(
+        String store)
+    {
+        final int hash = store == null ? 1 : store.hashCode();
+        for (int i = 0; i < storesByIndex.length; i++)
+        {
+            final int storeIndex = Math.floorMod(hash + i, storesByIndex.length);
+            if (storeIndex != NO_STORE_INDEX && storesByIndex[storeIndex] == null)
+            {
+                return storeIndex;
+            }
+        }
+
+        return NO_STORE_INDEX;
+    }
+
+    void add(
+        TlsStoreInfo storeInfo)
+    {
+        if (storeInfo.storeIndex != NO_STORE_INDEX)
+        {
+            storesByIndex[storeInfo.storeIndex] = storeInfo;
+        }
+
+        if (storeInfo.store == null)
+        {
+            defaultStore = storeInfo;
+        }
+        else
+        {
+            storesByName.put(storeInfo.store, storeInfo);
+        }
+    }
+
+    void remove(
+        TlsStoreInfo storeInfo)
+    {
+        if (storeInfo.storeIndex != NO_STORE_INDEX)
+        {
+            storesByIndex[storeInfo.storeIndex] = null;
+        }
+
+        if (storeInfo.store == null)
+        {
+            defaultStore = null;
+        }
+        else
+        {
+            storesByName.remove(storeInfo.store);
+        }
+    }
+}
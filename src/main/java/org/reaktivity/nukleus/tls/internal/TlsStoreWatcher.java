@@ -0,0 +1,182 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.agrona.LangUtil;
+
+final class TlsStoreWatcher implements Runnable, AutoCloseable
+{
+    private final Function<String, TlsStoreContext> loadStore;
+    private final long delayMillis;
+    private final Runnable onReloadFailure;
+    private final WatchService watchService;
+    private final Map<WatchKey, TlsStoreInfo> storeInfosByKey;
+    private final Thread thread;
+
+    TlsStoreWatcher(
+        Function<String, TlsStoreContext> loadStore,
+        long delayMillis,
+        Runnable onReloadFailure)
+    {
+        this.loadStore = loadStore;
+        this.delayMillis = delayMillis;
+        this.onReloadFailure = onReloadFailure;
+        this.watchService = newWatchService();
+        this.storeInfosByKey = new ConcurrentHashMap<>();
+        this.thread = new Thread(this, "tls-store-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void watch(
+        TlsStoreInfo storeInfo,
+        Path directory)
+    {
+        if (Files.isDirectory(directory))
+        {
+            try
+            {
+                final WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                storeInfosByKey.put(key, storeInfo);
+            }
+            catch (IOException ex)
+            {
+                LangUtil.rethrowUnchecked(ex);
+            }
+        }
+    }
+
+    void unwatch(
+        TlsStoreInfo storeInfo)
+    {
+        storeInfosByKey.entrySet().removeIf(e ->
+        {
+            final boolean unwatched = e.getValue() == storeInfo;
+            if (unwatched)
+            {
+                e.getKey().cancel();
+            }
+            return unwatched;
+        });
+    }
+
+    // wakes the watcher thread blocked on the watch service, it exits without further reloads
+    @Override
+    public void close()
+    {
+        try
+        {
+            watchService.close();
+        }
+        catch (IOException ex)
+        {
+            // watcher thread still exits on interrupt
+        }
+        finally
+        {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        final Set<TlsStoreInfo> changed = new LinkedHashSet<>();
+
+        try
+        {
+            for (WatchKey key = watchService.take(); key != null; key = watchService.take())
+            {
+                // keystore rotation writes several files, reload once the directory is quiet
+                for (; key != null; key = watchService.poll(delayMillis, MILLISECONDS))
+                {
+                    key.pollEvents();
+                    key.reset();
+
+                    final TlsStoreInfo storeInfo = storeInfosByKey.get(key);
+                    if (storeInfo != null)
+                    {
+                        changed.add(storeInfo);
+                    }
+                }
+
+                changed.forEach(this::reload);
+                changed.clear();
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException ex)
+        {
+            // shutdown
+        }
+    }
+
+    private void reload(
+        TlsStoreInfo storeInfo)
+    {
+        TlsStoreContext storeContext = null;
+
+        try
+        {
+            storeContext = loadStore.apply(storeInfo.store);
+        }
+        catch (Exception ex)
+        {
+            // partially written store, keep previous context until next change
+        }
+
+        if (storeContext != null)
+        {
+            storeInfo.reload(storeContext);
+        }
+        else
+        {
+            onReloadFailure.run();
+        }
+    }
+
+    private static WatchService newWatchService()
+    {
+        WatchService watchService = null;
+
+        try
+        {
+            watchService = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException ex)
+        {
+            LangUtil.rethrowUnchecked(ex);
+        }
+
+        return watchService;
+    }
+}
@@ -18,6 +18,8 @@ package org.reaktivity.nukleus.tls.internal.stream;
 import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BufferUtil.allocateDirectAligned;
 import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
 import static org.reaktivity.nukleus.concurrent.Signaler.NO_CANCEL_ID;
 
@@ -26,16 +28,17 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.LongUnaryOperator;
 import java.util.function.ToIntFunction;
 
 import javax.net.ssl.SNIHostName;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
@@ -51,6 +54,7 @@ import org.reaktivity.nukleus.route.RouteManager;
 import org.reaktivity.nukleus.stream.StreamFactory;
 import org.reaktivity.nukleus.tls.internal.TlsConfiguration;
 import org.reaktivity.nukleus.tls.internal.TlsCounters;
+import org.reaktivity.nukleus.tls.internal.TlsHandshakeExecutor;
 import org.reaktivity.nukleus.tls.internal.TlsNukleus;
 import org.reaktivity.nukleus.tls.internal.TlsStoreInfo;
 import org.reaktivity.nukleus.tls.internal.types.OctetsFW;
@@ -75,7 +79,10 @@ public final class TlsClientFactory implements StreamFactory
     private static final OctetsFW EMPTY_OCTETS = new OctetsFW().wrap(new UnsafeBuffer(new byte[0]), 0, 0);
     private static final Consumer<OctetsFW.Builder> EMPTY_EXTENSION = ex -> {};
     private static final int MAXIMUM_HEADER_SIZE = 5 + 20 + 256;    // TODO version + MAC + padding
+    private static final int MAXIMUM_RECORD_SIZE = 16384;
     private static final int HANDSHAKE_TASK_COMPLETE_SIGNAL = 1;
+    private static final int ENCODE_FLUSH_SIGNAL = 2;
+    private static final int HANDSHAKE_TASK_DEFER_SIGNAL = 3;
     private static final MutableDirectBuffer EMPTY_MUTABLE_DIRECT_BUFFER = new UnsafeBuffer(new byte[0]);
 
     private static final Optional<TlsStream> NULL_STREAM = ofNullable(null);
@@ -129,12 +136,23 @@ public final class TlsClientFactory implements StreamFactory
     private final LongUnaryOperator supplyInitialId;
     private final LongUnaryOperator supplyReplyId;
     private final int initialPaddingAdjust;
+    private final boolean decodeZeroCopy;
+    private final boolean encodeCoalesce;
+    private final boolean encodeRecordDynamic;
+    private final int encodeRecordInitialSize;
+    private final long encodeRecordWarmupBytes;
+    private final long encodeRecordIdleMillis;
+    private final TlsHandshakeExecutor handshakeExecutor;
+    private final boolean handshakeTaskQueueFullReset;
+    private final long handshakeTaskDeferMillis;
+    private final boolean handshakeTaskDrain;
 
     private final int decodeBudgetMax;
     private final int handshakeBudgetMax;
 
     private final Long2ObjectHashMap<TlsStream.TlsClient> correlations;
     private final Function<String, TlsStoreInfo> lookupStore;
+    private final TlsCounters counters;
 
     private final ByteBuffer inNetByteBuffer;
     private final MutableDirectBuffer inNetBuffer;
@@ -155,11 +173,13 @@ public final class TlsClientFactory implements StreamFactory
         LongUnaryOperator supplyReplyId,
         ToIntFunction<String> supplyTypeId,
         Function<String, TlsStoreInfo> lookupStore,
+        TlsHandshakeExecutor handshakeExecutor,
         TlsCounters counters)
     {
         this.tlsTypeId = supplyTypeId.applyAsInt(TlsNukleus.NAME);
         this.signaler = requireNonNull(signaler);
         this.lookupStore = requireNonNull(lookupStore);
+        this.counters = requireNonNull(counters);
         this.router = requireNonNull(router);
         this.writeBuffer = requireNonNull(writeBuffer);
         this.decodePool = new CountingBufferPool(bufferPool, counters.clientDecodeAcquires, counters.clientDecodeReleases);
@@ -169,15 +189,29 @@ public final class TlsClientFactory implements StreamFactory
         this.correlations = new Long2ObjectHashMap<>();
         this.decodeBudgetMax = decodePool.slotCapacity();
         this.handshakeBudgetMax = Math.min(config.handshakeWindowBytes(), decodeBudgetMax);
+        this.decodeZeroCopy = config.decodeZeroCopy();
+        this.encodeCoalesce = config.encodeCoalesce();
+        this.encodeRecordDynamic = config.encodeRecordDynamic();
+        this.encodeRecordInitialSize = Math.min(Math.max(config.encodeRecordInitialSize(), 1), MAXIMUM_RECORD_SIZE);
         this.initialPaddingAdjust = Math.max(bufferPool.slotCapacity() >> 14, 1) * MAXIMUM_HEADER_SIZE;
-
-        this.inNetByteBuffer = ByteBuffer.allocate(writeBuffer.capacity());
+        this.encodeRecordWarmupBytes = config.encodeRecordWarmupBytes();
+        this.encodeRecordIdleMillis = config.encodeRecordIdleMillis();
+        this.handshakeExecutor = handshakeExecutor;
+        this.handshakeTaskQueueFullReset = config.handshakeTaskQueueFullReset();
+        this.handshakeTaskDeferMillis = config.handshakeTaskDeferMillis();
+        this.handshakeTaskDrain = config.handshakeTaskDrain();
+
+        final IntFunction<ByteBuffer> allocateByteBuffer = config.engineBuffersDirect()
+                ? c -> allocateDirectAligned(c, CACHE_LINE_LENGTH)
+                : ByteBuffer::allocate;
+
+        this.inNetByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity());
         this.inNetBuffer = new UnsafeBuffer(inNetByteBuffer);
-        this.outNetByteBuffer = ByteBuffer.allocate(writeBuffer.capacity());
+        this.outNetByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity());
         this.outNetBuffer = new UnsafeBuffer(outNetByteBuffer);
-        this.inAppByteBuffer = ByteBuffer.allocate(writeBuffer.capacity());
+        this.inAppByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity());
         this.inAppBuffer = new UnsafeBuffer(inAppByteBuffer);
-        this.outAppByteBuffer = ByteBuffer.allocate(writeBuffer.capacity());
+        this.outAppByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity());
         this.outAppBuffer = new UnsafeBuffer(outAppByteBuffer);
     }
 
@@ -260,12 +294,9 @@ public final class TlsClientFactory implements StreamFactory
             final long applicationAffinity = begin.affinity();
 
             final TlsStoreInfo storeInfo = lookupStore.apply(store);
-            final SSLContext context = storeInfo != null ? storeInfo.context : null;
-            if (context != null)
+            final SSLEngine tlsEngine = storeInfo != null ? storeInfo.newClientEngine(tlsHostname, networkRouteId) : null;
+            if (tlsEngine != null)
             {
-                final SSLEngine tlsEngine = context.createSSLEngine(tlsHostname, -1);
-                tlsEngine.setUseClientMode(true);
-
                 final SSLParameters tlsParameters = tlsEngine.getSSLParameters();
                 tlsParameters.setEndpointIdentificationAlgorithm("HTTPS");
                 if (tlsHostname != null)
@@ -494,14 +525,12 @@ public final class TlsClientFactory implements StreamFactory
                 final int tlsRecordDataLimit = tlsRecordDataOffset + tlsRecordInfo.length();
                 if (tlsRecordDataLimit <= limit)
                 {
-                    inNetByteBuffer.clear();
-                    inNetBuffer.putBytes(0, buffer, progress, tlsRecordDataLimit - progress);
-                    inNetByteBuffer.limit(tlsRecordDataLimit - progress);
+                    final ByteBuffer netByteBuffer = supplyInNetByteBuffer(client, buffer, progress, tlsRecordDataLimit);
                     outAppByteBuffer.clear();
 
                     try
                     {
-                        final SSLEngineResult result = client.tlsEngine.unwrap(inNetByteBuffer, outAppByteBuffer);
+                        final SSLEngineResult result = client.tlsEngine.unwrap(netByteBuffer, outAppByteBuffer);
                         final int bytesProduced = result.bytesProduced();
                         final int bytesConsumed = result.bytesConsumed();
 
@@ -666,8 +695,8 @@ public final class TlsClientFactory implements StreamFactory
         int progress,
         int limit)
     {
-        client.onDecodeHandshakeNeedTask(traceId, authorization);
         client.decoder = decodeHandshake;
+        client.onDecodeHandshakeNeedTask(traceId, authorization);
         return progress;
     }
 
@@ -685,14 +714,12 @@ public final class TlsClientFactory implements StreamFactory
         final int length = limit - progress;
         if (length != 0)
         {
-            inNetByteBuffer.clear();
-            inNetBuffer.putBytes(0, buffer, progress, length);
-            inNetByteBuffer.limit(length);
+            final ByteBuffer netByteBuffer = supplyInNetByteBuffer(client, buffer, progress, limit);
             outAppByteBuffer.clear();
 
             try
             {
-                final SSLEngineResult result = client.tlsEngine.unwrap(inNetByteBuffer, outAppByteBuffer);
+                final SSLEngineResult result = client.tlsEngine.unwrap(netByteBuffer, outAppByteBuffer);
                 final int bytesConsumed = result.bytesConsumed();
                 final int bytesProduced = result.bytesProduced();
 
@@ -764,6 +791,33 @@ public final class TlsClientFactory implements StreamFactory
         return limit;
     }
 
+    private ByteBuffer supplyInNetByteBuffer(
+        TlsStream.TlsClient client,
+        DirectBuffer buffer,
+        int progress,
+        int limit)
+    {
+        ByteBuffer byteBuffer;
+
+        if (decodeZeroCopy && client.decodeSlot != NO_SLOT)
+        {
+            // decode buffer is always the decode slot, so unwrap directly from slot memory
+            byteBuffer = decodePool.byteBuffer(client.decodeSlot);
+            final int slotOffset = byteBuffer.position();
+            byteBuffer.limit(slotOffset + limit);
+            byteBuffer.position(slotOffset + progress);
+        }
+        else
+        {
+            byteBuffer = inNetByteBuffer;
+            byteBuffer.clear();
+            inNetBuffer.putBytes(0, buffer, progress, limit - progress);
+            byteBuffer.limit(limit - progress);
+        }
+
+        return byteBuffer;
+    }
+
     @FunctionalInterface
     private interface TlsClientDecoder
     {
@@ -877,7 +931,19 @@ public final class TlsClientFactory implements StreamFactory
                 final long budgetId = data.budgetId();
                 final OctetsFW payload = data.payload();
 
-                client.doEncodeWrap(traceId, budgetId, payload);
+                if (encodeCoalesce)
+                {
+                    client.doEncodeCoalesce(traceId, budgetId, data.reserved(), payload);
+
+                    if (initialBudget <= client.initialPadding + initialPaddingAdjust)
+                    {
+                        client.doEncodeFlushIfNecessary(traceId);
+                    }
+                }
+                else
+                {
+                    client.doEncodeWrap(traceId, budgetId, payload);
+                }
             }
         }
 
@@ -890,6 +956,7 @@ public final class TlsClientFactory implements StreamFactory
             state = TlsState.closeInitial(state);
             client.stream = nullIfClosed(state, client.stream);
 
+            client.doEncodeFlushIfNecessary(traceId);
             client.doEncodeCloseOutbound(traceId, budgetId);
         }
 
@@ -1024,7 +1091,7 @@ public final class TlsClientFactory implements StreamFactory
             long traceId,
             long budgetId)
         {
-            int initialCredit = client.initialBudget - client.encodeSlotOffset - initialBudget;
+            int initialCredit = client.initialBudget - client.encodeSlotOffset - client.wrapSlotReserved - initialBudget;
             if (initialCredit > 0 && TlsState.initialOpened(state))
             {
                 final int initialPadding = client.initialPadding + initialPaddingAdjust;
@@ -1064,12 +1131,22 @@ public final class TlsClientFactory implements StreamFactory
             private int encodeSlotOffset;
             private long encodeSlotTraceId;
 
+            private int wrapSlot = NO_SLOT;
+            private int wrapSlotOffset;
+            private int wrapSlotReserved;
+            private long wrapSlotBudgetId;
+
+            private long encodeRecordBytes;
+            private long encodeRecordMillis;
+
             private int decodeSlot = NO_SLOT;
             private int decodeSlotOffset;
             private int decodeSlotReserved;
             private long decodeSlotBudgetId;
 
             private long handshakeTaskFutureId = NO_CANCEL_ID;
+            private Runnable handshakeTask;
+            private long handshakeStartMillis;
 
             private Optional<TlsStream> stream;
 
@@ -1242,6 +1319,7 @@ public final class TlsClientFactory implements StreamFactory
                 authorization = reset.authorization();
                 state = TlsState.closeInitial(state);
 
+                cleanupWrapSlotIfNecessary();
                 cleanupEncodeSlotIfNecessary();
 
                 closeInboundQuietly(tlsEngine);
@@ -1291,9 +1369,28 @@ public final class TlsClientFactory implements StreamFactory
                 case HANDSHAKE_TASK_COMPLETE_SIGNAL:
                     onNetworkSignalHandshakeTaskComplete(signal);
                     break;
+                case ENCODE_FLUSH_SIGNAL:
+                    doEncodeFlushIfNecessary(signal.traceId());
+                    break;
+                case HANDSHAKE_TASK_DEFER_SIGNAL:
+                    onNetworkSignalHandshakeTaskDeferred(signal);
+                    break;
                 }
             }
 
+            private void onNetworkSignalHandshakeTaskDeferred(
+                SignalFW signal)
+            {
+                assert handshakeTaskFutureId != NO_CANCEL_ID;
+                assert handshakeTask != null;
+
+                final Runnable task = handshakeTask;
+                handshakeTask = null;
+                handshakeTaskFutureId = NO_CANCEL_ID;
+
+                doHandshakeTask(signal.traceId(), task);
+            }
+
             private void onNetworkSignalHandshakeTaskComplete(
                 SignalFW signal)
             {
@@ -1334,6 +1431,7 @@ public final class TlsClientFactory implements StreamFactory
 
                 try
                 {
+                    handshakeStartMillis = System.currentTimeMillis();
                     tlsEngine.beginHandshake();
                 }
                 catch (SSLException ex)
@@ -1367,6 +1465,7 @@ public final class TlsClientFactory implements StreamFactory
             private void doNetworkEnd(
                 long traceId)
             {
+                cleanupWrapSlotIfNecessary();
                 cleanupEncodeSlotIfNecessary();
                 doEnd(network, routeId, initialId, traceId, authorization, EMPTY_EXTENSION);
                 state = TlsState.closeInitial(state);
@@ -1390,6 +1489,7 @@ public final class TlsClientFactory implements StreamFactory
                     state = TlsState.closeInitial(state);
                 }
 
+                cleanupWrapSlotIfNecessary();
                 cleanupEncodeSlotIfNecessary();
             }
 
@@ -1582,7 +1682,32 @@ public final class TlsClientFactory implements StreamFactory
                 {
                     final Runnable task = tlsEngine.getDelegatedTask();
                     assert task != null;
-                    handshakeTaskFutureId = signaler.signalTask(task, routeId, initialId, HANDSHAKE_TASK_COMPLETE_SIGNAL);
+                    doHandshakeTask(traceId, handshakeTaskDrain ? () -> runDelegatedTasks(tlsEngine, task) : task);
+                }
+            }
+
+            private void doHandshakeTask(
+                long traceId,
+                Runnable task)
+            {
+                handshakeTaskFutureId = signalHandshakeTask(task, routeId, initialId);
+
+                if (handshakeTaskFutureId == NO_CANCEL_ID)
+                {
+                    counters.handshakeTaskRejections.getAsLong();
+
+                    if (handshakeTaskQueueFullReset)
+                    {
+                        decoder = decodeIgnoreAll;
+                        cleanupNetwork(traceId);
+                    }
+                    else
+                    {
+                        // decoding and network window stay paused until the task is accepted
+                        handshakeTask = task;
+                        handshakeTaskFutureId = signaler.signalAt(System.currentTimeMillis() + handshakeTaskDeferMillis,
+                                routeId, initialId, HANDSHAKE_TASK_DEFER_SIGNAL);
+                    }
                 }
             }
 
@@ -1593,6 +1718,8 @@ public final class TlsClientFactory implements StreamFactory
                 assert stream == NULL_STREAM;
                 stream = Optional.of(TlsStream.this);
 
+                onDecodeSessionFinished(tlsEngine.getSession());
+
                 final String protocol = tlsEngine.getApplicationProtocol();
 
                 doApplicationBegin(traceId, budgetId, tlsHostname, protocol);
@@ -1601,6 +1728,20 @@ public final class TlsClientFactory implements StreamFactory
                 flushApplicationWindow(traceId, budgetId);
             }
 
+            private void onDecodeSessionFinished(
+                SSLSession tlsSession)
+            {
+                // resumed sessions were created by an earlier handshake, see TlsServerFactory for the TLS 1.3 limitation
+                if (tlsSession.getCreationTime() < handshakeStartMillis)
+                {
+                    counters.clientHandshakesResumed.getAsLong();
+                }
+                else
+                {
+                    counters.clientHandshakesFull.getAsLong();
+                }
+            }
+
             private void onDecodeUnwrapped(
                 long traceId,
                 long authorization,
@@ -1632,15 +1773,47 @@ public final class TlsClientFactory implements StreamFactory
                 inAppByteBuffer.clear();
                 inAppBuffer.putBytes(0, buffer, offset, length);
                 inAppByteBuffer.limit(length);
+
+                doEncodeWrap(traceId, budgetId, inAppByteBuffer);
+            }
+
+            private void doEncodeWrap(
+                long traceId,
+                long budgetId,
+                ByteBuffer appByteBuffer)
+            {
+                final int appLimit = appByteBuffer.limit();
                 outNetByteBuffer.clear();
 
+                if (encodeRecordDynamic && appByteBuffer.hasRemaining())
+                {
+                    final long now = System.currentTimeMillis();
+                    if (now - encodeRecordMillis > encodeRecordIdleMillis)
+                    {
+                        // small records again after idle, congestion window likely reset
+                        encodeRecordBytes = 0L;
+                    }
+                    encodeRecordMillis = now;
+                }
+
                 try
                 {
+                    int overhead = 0;
+
                     loop:
                     do
                     {
-                        final SSLEngineResult result = tlsEngine.wrap(inAppByteBuffer, outNetByteBuffer);
+                        if (encodeRecordDynamic)
+                        {
+                            final int remaining = appLimit - appByteBuffer.position();
+                            final int recordSize = encodeRecordSize(encodeRecordBytes, overhead, remaining);
+                            appByteBuffer.limit(Math.min(appByteBuffer.position() + recordSize, appLimit));
+                        }
+
+                        final SSLEngineResult result = tlsEngine.wrap(appByteBuffer, outNetByteBuffer);
                         final int bytesProduced = result.bytesProduced();
+                        encodeRecordBytes += result.bytesConsumed();
+                        overhead += bytesProduced - result.bytesConsumed();
 
                         switch (result.getStatus())
                         {
@@ -1661,7 +1834,7 @@ public final class TlsClientFactory implements StreamFactory
                             }
                             break;
                         }
-                    } while (inAppByteBuffer.hasRemaining());
+                    } while (appByteBuffer.position() < appLimit);
 
                     final int outNetBytesProduced = outNetByteBuffer.position();
                     doNetworkData(traceId, budgetId, outNetBuffer, 0, outNetBytesProduced);
@@ -1672,6 +1845,67 @@ public final class TlsClientFactory implements StreamFactory
                 }
             }
 
+            private void doEncodeCoalesce(
+                long traceId,
+                long budgetId,
+                int reserved,
+                OctetsFW payload)
+            {
+                final int length = payload.sizeof();
+
+                if (wrapSlotOffset + length > encodePool.slotCapacity())
+                {
+                    doEncodeFlushIfNecessary(traceId);
+                }
+
+                if (wrapSlot == NO_SLOT && length < MAXIMUM_RECORD_SIZE)
+                {
+                    wrapSlot = encodePool.acquire(initialId);
+                }
+
+                if (wrapSlot == NO_SLOT)
+                {
+                    doEncodeWrap(traceId, budgetId, payload);
+                }
+                else
+                {
+                    if (wrapSlotOffset == 0)
+                    {
+                        // flush at end of burst, after currently queued application frames
+                        signaler.signalNow(routeId, initialId, ENCODE_FLUSH_SIGNAL);
+                    }
+
+                    final MutableDirectBuffer wrapBuffer = encodePool.buffer(wrapSlot);
+                    wrapBuffer.putBytes(wrapSlotOffset, payload.buffer(), payload.offset(), length);
+                    wrapSlotOffset += length;
+                    wrapSlotReserved += reserved;
+                    wrapSlotBudgetId = budgetId;
+
+                    if (wrapSlotOffset >= MAXIMUM_RECORD_SIZE)
+                    {
+                        doEncodeFlushIfNecessary(traceId);
+                    }
+                }
+            }
+
+            private void doEncodeFlushIfNecessary(
+                long traceId)
+            {
+                if (wrapSlot != NO_SLOT)
+                {
+                    final ByteBuffer wrapByteBuffer = encodePool.byteBuffer(wrapSlot);
+                    wrapByteBuffer.limit(wrapByteBuffer.position() + wrapSlotOffset);
+
+                    final long budgetId = wrapSlotBudgetId;
+                    wrapSlotOffset = 0;
+                    wrapSlotReserved = 0;
+
+                    doEncodeWrap(traceId, budgetId, wrapByteBuffer);
+
+                    cleanupWrapSlotIfNecessary();
+                }
+            }
+
             private void doEncodeCloseOutbound(
                 long traceId,
                 long budgetId)
@@ -1714,6 +1948,17 @@ public final class TlsClientFactory implements StreamFactory
                 }
             }
 
+            private void cleanupWrapSlotIfNecessary()
+            {
+                if (wrapSlot != NO_SLOT)
+                {
+                    encodePool.release(wrapSlot);
+                    wrapSlot = NO_SLOT;
+                    wrapSlotOffset = 0;
+                    wrapSlotReserved = 0;
+                }
+            }
+
             private void cleanupEncodeSlotIfNecessary()
             {
                 if (encodeSlot != NO_SLOT)
@@ -1727,6 +1972,72 @@ public final class TlsClientFactory implements StreamFactory
         }
     }
 
+    private long signalHandshakeTask(
+        Runnable task,
+        long routeId,
+        long streamId)
+    {
+        final long submitNanos = System.nanoTime();
+        counters.handshakeTaskQueueDepth.accept(1L);
+
+        final Runnable timedTask = () ->
+        {
+            counters.handshakeTaskQueueDepth.accept(-1L);
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                counters.handshakeTaskLatencyNanos.accept(System.nanoTime() - submitNanos);
+                counters.handshakeTaskCompletions.accept(1L);
+            }
+        };
+
+        final long taskId = handshakeExecutor != null
+                ? handshakeExecutor.signalTask(timedTask, signaler, routeId, streamId, HANDSHAKE_TASK_COMPLETE_SIGNAL)
+                : signaler.signalTask(timedTask, routeId, streamId, HANDSHAKE_TASK_COMPLETE_SIGNAL);
+
+        if (taskId == NO_CANCEL_ID)
+        {
+            counters.handshakeTaskQueueDepth.accept(-1L);
+        }
+
+        return taskId;
+    }
+
+    // small records while warming up, as long as their overhead fits the padding reserved for full size records
+    private int encodeRecordSize(
+        long encodeRecordBytes,
+        int overhead,
+        int remaining)
+    {
+        int recordSize = MAXIMUM_RECORD_SIZE;
+
+        if (encodeRecordBytes < encodeRecordWarmupBytes)
+        {
+            final int remainingFullSize = Math.max(remaining - encodeRecordInitialSize, 0);
+            final int records = 1 + (remainingFullSize + MAXIMUM_RECORD_SIZE - 1) / MAXIMUM_RECORD_SIZE;
+            if (overhead + records * MAXIMUM_HEADER_SIZE <= initialPaddingAdjust)
+            {
+                recordSize = encodeRecordInitialSize;
+            }
+        }
+
+        return recordSize;
+    }
+
+    private static void runDelegatedTasks(
+        SSLEngine tlsEngine,
+        Runnable task)
+    {
+        // tasks made available by earlier tasks run in the same submission, one signal per handshake step
+        for (Runnable next = task; next != null; next = tlsEngine.getDelegatedTask())
+        {
+            next.run();
+        }
+    }
+
     private static void closeInboundQuietly(
         SSLEngine tlsEngine)
     {
@@ -30,12 +30,16 @@ import org.reaktivity.nukleus.stream.StreamFactory;
 import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
 import org.reaktivity.nukleus.tls.internal.TlsConfiguration;
 import org.reaktivity.nukleus.tls.internal.TlsCounters;
+import org.reaktivity.nukleus.tls.internal.TlsHandshakeExecutor;
 import org.reaktivity.nukleus.tls.internal.TlsStoreInfo;
+import org.reaktivity.nukleus.tls.internal.TlsStoreLoader;
 
 public final class TlsClientFactoryBuilder implements StreamFactoryBuilder
 {
     private final TlsConfiguration config;
     private final Function<String, TlsStoreInfo> lookupStore;
+    private final TlsHandshakeExecutor handshakeExecutor;
+    private final TlsStoreLoader storeLoader;
 
     private RouteManager router;
     private Signaler signaler;
@@ -49,10 +53,14 @@ public final class TlsClientFactoryBuilder implements StreamFactoryBuilder
 
     public TlsClientFactoryBuilder(
         TlsConfiguration config,
-        Function<String, TlsStoreInfo> lookupStore)
+        Function<String, TlsStoreInfo> lookupStore,
+        TlsHandshakeExecutor handshakeExecutor,
+        TlsStoreLoader storeLoader)
     {
         this.config = config;
         this.lookupStore = lookupStore;
+        this.handshakeExecutor = handshakeExecutor;
+        this.storeLoader = storeLoader;
     }
 
     @Override
@@ -132,6 +140,7 @@ public final class TlsClientFactoryBuilder implements StreamFactoryBuilder
     {
         final BufferPool bufferPool = supplyBufferPool.get();
         final TlsCounters counters = new TlsCounters(supplyCounter, supplyAccumulator);
+        storeLoader.bind(counters);
 
         return new TlsClientFactory(
             config,
@@ -143,6 +152,7 @@ public final class TlsClientFactoryBuilder implements StreamFactoryBuilder
             supplyReplyId,
             supplyTypeId,
             lookupStore,
+            handshakeExecutor,
             counters);
     }
 }
@@ -15,33 +15,30 @@
  */
 package org.reaktivity.nukleus.tls.internal.stream;
 
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BufferUtil.allocateDirectAligned;
 import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
 import static org.reaktivity.nukleus.concurrent.Signaler.NO_CANCEL_ID;
 
 import java.nio.ByteBuffer;
 import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.LongUnaryOperator;
 import java.util.function.ToIntFunction;
 
-import javax.net.ssl.ExtendedSSLSession;
-import javax.net.ssl.SNIHostName;
-import javax.net.ssl.SNIServerName;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
-import javax.security.auth.x500.X500Principal;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
@@ -57,10 +54,13 @@ import org.reaktivity.nukleus.route.RouteManager;
 import org.reaktivity.nukleus.stream.StreamFactory;
 import org.reaktivity.nukleus.tls.internal.TlsConfiguration;
 import org.reaktivity.nukleus.tls.internal.TlsCounters;
+import org.reaktivity.nukleus.tls.internal.TlsHandshakeExecutor;
 import org.reaktivity.nukleus.tls.internal.TlsNukleus;
+import org.reaktivity.nukleus.tls.internal.TlsRouteIndex;
+import org.reaktivity.nukleus.tls.internal.TlsRouteIndex.TlsRouteInfo;
 import org.reaktivity.nukleus.tls.internal.TlsStoreInfo;
 import org.reaktivity.nukleus.tls.internal.types.OctetsFW;
-import org.reaktivity.nukleus.tls.internal.types.String8FW;
+import org.reaktivity.nukleus.tls.internal.types.StringFW;
 import org.reaktivity.nukleus.tls.internal.types.codec.TlsClientHelloFW;
 import org.reaktivity.nukleus.tls.internal.types.codec.TlsContentType;
 import org.reaktivity.nukleus.tls.internal.types.codec.TlsExtensionFW;
@@ -76,7 +76,6 @@ import org.reaktivity.nukleus.tls.internal.types.codec.TlsUnwrappedDataFW;
 import org.reaktivity.nukleus.tls.internal.types.codec.TlsUnwrappedInfoFW;
 import org.reaktivity.nukleus.tls.internal.types.codec.TlsVector16FW;
 import org.reaktivity.nukleus.tls.internal.types.control.RouteFW;
-import org.reaktivity.nukleus.tls.internal.types.control.TlsRouteExFW;
 import org.reaktivity.nukleus.tls.internal.types.stream.AbortFW;
 import org.reaktivity.nukleus.tls.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.tls.internal.types.stream.DataFW;
@@ -91,13 +90,17 @@ public final class TlsServerFactory implements StreamFactory
     private static final OctetsFW EMPTY_OCTETS = new OctetsFW().wrap(new UnsafeBuffer(new byte[0]), 0, 0);
     private static final Consumer<OctetsFW.Builder> EMPTY_EXTENSION = ex -> {};
     private static final int MAXIMUM_HEADER_SIZE = 5 + 20 + 256;    // TODO version + MAC + padding
+    private static final int MAXIMUM_BATCH_LENGTH = 0xffff;
+    private static final int MAXIMUM_RECORD_SIZE = 16384;
     private static final int HANDSHAKE_TASK_COMPLETE_SIGNAL = 1;
+    private static final int ENCODE_FLUSH_SIGNAL = 2;
+    private static final int HANDSHAKE_TASK_DEFER_SIGNAL = 3;
+    private static final int SERVER_NAME_CACHE_SIZE = 256;
     private static final MutableDirectBuffer EMPTY_MUTABLE_DIRECT_BUFFER = new UnsafeBuffer(new byte[0]);
 
     static final Optional<TlsServer.TlsStream> NULL_STREAM = Optional.ofNullable(null);
 
     private final ThreadLocal<RouteFW> routeRO = ThreadLocal.withInitial(RouteFW::new);
-    private final ThreadLocal<TlsRouteExFW> tlsRouteExRO = ThreadLocal.withInitial(TlsRouteExFW::new);
 
     private final BeginFW beginRO = new BeginFW();
     private final DataFW dataRO = new DataFW();
@@ -125,7 +128,7 @@ public final class TlsServerFactory implements StreamFactory
     private final TlsVector16FW tlsVector16RO = new TlsVector16FW();
     private final TlsServerNameExtensionFW tlsServerNameExtensionRO = new TlsServerNameExtensionFW();
     private final TlsServerNameFW tlsServerNameRO = new TlsServerNameFW();
-    private final String8FW tlsProtocolNameRO = new String8FW();
+    private final TlsVector16FW tlsProtocolNamesRO = new TlsVector16FW();
 
     private final TlsUnwrappedInfoFW.Builder tlsUnwrappedInfoRW = new TlsUnwrappedInfoFW.Builder();
     private final TlsUnwrappedDataFW tlsUnwrappedDataRO = new TlsUnwrappedDataFW();
@@ -143,9 +146,6 @@ public final class TlsServerFactory implements StreamFactory
 
     private final MessageFunction<RouteFW> wrapRoute = (t, b, i, l) -> routeRO.get().wrap(b, i, i + l);
 
-    private final MessageFunction<TlsRouteExFW> wrapRouteEx = (t, b, i, l) -> wrapRoute.apply(t, b, i, l).extension()
-                                                                                       .get(tlsRouteExRO.get()::tryWrap);
-
     private final int tlsTypeId;
     private final Signaler signaler;
     private final RouteManager router;
@@ -155,13 +155,28 @@ public final class TlsServerFactory implements StreamFactory
     private final LongUnaryOperator supplyInitialId;
     private final LongUnaryOperator supplyReplyId;
     private final int replyPaddingAdjust;
+    private final boolean decodeZeroCopy;
+    private final int decodeBatchRecordsMax;
+    private final boolean encodeCoalesce;
+    private final boolean encodeRecordDynamic;
+    private final int encodeRecordInitialSize;
+    private final long encodeRecordWarmupBytes;
+    private final long encodeRecordIdleMillis;
+    private final TlsHandshakeExecutor handshakeExecutor;
+    private final boolean handshakeTaskQueueFullReset;
+    private final long handshakeTaskDeferMillis;
+    private final boolean handshakeTaskDrain;
+    private final boolean serverEnginePool;
 
     private final int decodeBudgetMax;
     private final int handshakeBudgetMax;
 
     private final Long2ObjectHashMap<TlsServer.TlsStream> correlations;
     private final Function<String, TlsStoreInfo> lookupStore;
+    private final TlsRouteIndex routeIndex;
     private final TlsCounters counters;
+    private final byte[][] serverNameBytes;     // recently requested server names by hash, I/O thread only
+    private final String[] serverNames;
 
     private final ByteBuffer inNetByteBuffer;
     private final MutableDirectBuffer inNetBuffer;
@@ -182,30 +197,51 @@ public final class TlsServerFactory implements StreamFactory
         LongUnaryOperator supplyReplyId,
         ToIntFunction<String> supplyTypeId,
         Function<String, TlsStoreInfo> lookupStore,
+        TlsRouteIndex routeIndex,
+        TlsHandshakeExecutor handshakeExecutor,
         TlsCounters counters)
     {
         this.tlsTypeId = supplyTypeId.applyAsInt(TlsNukleus.NAME);
         this.signaler = requireNonNull(signaler);
         this.lookupStore = requireNonNull(lookupStore);
+        this.routeIndex = requireNonNull(routeIndex);
         this.counters = requireNonNull(counters);
+        this.serverNameBytes = new byte[SERVER_NAME_CACHE_SIZE][];
+        this.serverNames = new String[SERVER_NAME_CACHE_SIZE];
         this.router = requireNonNull(router);
         this.writeBuffer = requireNonNull(writeBuffer);
         this.decodePool = new CountingBufferPool(bufferPool, counters.serverDecodeAcquires, counters.serverDecodeReleases);
         this.encodePool = new CountingBufferPool(bufferPool, counters.serverEncodeAcquires, counters.serverEncodeReleases);
         this.supplyInitialId = requireNonNull(supplyInitialId);
         this.supplyReplyId = requireNonNull(supplyReplyId);
+        this.decodeZeroCopy = config.decodeZeroCopy();
+        this.decodeBatchRecordsMax = config.decodeBatchRecords();
+        this.encodeCoalesce = config.encodeCoalesce();
+        this.encodeRecordDynamic = config.encodeRecordDynamic();
+        this.encodeRecordInitialSize = Math.min(Math.max(config.encodeRecordInitialSize(), 1), MAXIMUM_RECORD_SIZE);
         this.replyPaddingAdjust = Math.max(bufferPool.slotCapacity() >> 14, 1) * MAXIMUM_HEADER_SIZE;
+        this.encodeRecordWarmupBytes = config.encodeRecordWarmupBytes();
+        this.encodeRecordIdleMillis = config.encodeRecordIdleMillis();
+        this.handshakeExecutor = handshakeExecutor;
+        this.handshakeTaskQueueFullReset = config.handshakeTaskQueueFullReset();
+        this.handshakeTaskDeferMillis = config.handshakeTaskDeferMillis();
+        this.handshakeTaskDrain = config.handshakeTaskDrain();
+        this.serverEnginePool = config.serverEnginePoolSize() > 0;
         this.decodeBudgetMax = decodePool.slotCapacity();
         this.handshakeBudgetMax = Math.min(config.handshakeWindowBytes(), decodeBudgetMax);
         this.correlations = new Long2ObjectHashMap<>();
 
-        this.inNetByteBuffer = ByteBuffer.allocate(writeBuffer.capacity());
+        final IntFunction<ByteBuffer> allocateByteBuffer = config.engineBuffersDirect()
+                ? c -> allocateDirectAligned(c, CACHE_LINE_LENGTH)
+                : ByteBuffer::allocate;
+
+        this.inNetByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity());
         this.inNetBuffer = new UnsafeBuffer(inNetByteBuffer);
-        this.outNetByteBuffer = ByteBuffer.allocate(writeBuffer.capacity() << 1);
+        this.outNetByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity() << 1);
         this.outNetBuffer = new UnsafeBuffer(outNetByteBuffer);
-        this.inAppByteBuffer = ByteBuffer.allocate(writeBuffer.capacity());
+        this.inAppByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity());
         this.inAppBuffer = new UnsafeBuffer(inAppByteBuffer);
-        this.outAppByteBuffer = ByteBuffer.allocate(writeBuffer.capacity());
+        this.outAppByteBuffer = allocateByteBuffer.apply(writeBuffer.capacity());
         this.outAppBuffer = new UnsafeBuffer(outAppByteBuffer);
     }
 
@@ -438,7 +474,9 @@ public final class TlsServerFactory implements StreamFactory
 
                     if (tlsHandshake != null && tlsHandshake.type() == TlsHandshakeType.CLIENT_HELLO.value())
                     {
-                        final TlsClientHelloFW tlsClientHello = tlsHandshake.body().get(tlsClientHelloRO::tryWrap);
+                        final OctetsFW body = tlsHandshake.body();
+                        final TlsClientHelloFW tlsClientHello =
+                                tlsClientHelloRO.tryWrap(body.buffer(), body.offset(), body.limit());
 
                         if (tlsClientHello != null)
                         {
@@ -447,6 +485,18 @@ public final class TlsServerFactory implements StreamFactory
                     }
                 }
 
+                if (server.tlsEngine == null && server.handshakeTaskFutureId != NO_CANCEL_ID)
+                {
+                    // lazy store loading, decoding resumes on signal
+                    return progress;
+                }
+
+                if (server.decoder == decodeIgnoreAll)
+                {
+                    // lazy store load task rejected, stream already reset and counted
+                    return progress;
+                }
+
                 if (server.tlsEngine == null)
                 {
                     counters.serverDecodeNoClientHello.getAsLong();
@@ -534,14 +584,12 @@ public final class TlsServerFactory implements StreamFactory
                 final int tlsRecordDataLimit = tlsRecordDataOffset + tlsRecordInfo.length();
                 if (tlsRecordDataLimit <= limit)
                 {
-                    inNetByteBuffer.clear();
-                    inNetBuffer.putBytes(0, buffer, progress, tlsRecordDataLimit - progress);
-                    inNetByteBuffer.limit(tlsRecordDataLimit - progress);
+                    final ByteBuffer netByteBuffer = supplyInNetByteBuffer(server, buffer, progress, tlsRecordDataLimit);
                     outAppByteBuffer.clear();
 
                     try
                     {
-                        final SSLEngineResult result = server.tlsEngine.unwrap(inNetByteBuffer, outAppByteBuffer);
+                        final SSLEngineResult result = server.tlsEngine.unwrap(netByteBuffer, outAppByteBuffer);
                         final int bytesProduced = result.bytesProduced();
                         final int bytesConsumed = result.bytesConsumed();
 
@@ -562,8 +610,19 @@ public final class TlsServerFactory implements StreamFactory
                                 assert bytesConsumed == tlsRecordDataLimit - tlsRecordOffset;
                                 assert bytesProduced <= bytesConsumed : String.format("%d <= %d", bytesProduced, bytesConsumed);
 
-                                tlsUnwrappedDataRW.wrap(buffer, tlsRecordDataOffset, tlsRecordDataLimit)
-                                                  .payload(outAppBuffer, 0, bytesProduced)
+                                final int tlsBatchDataLimit = decodeBatchRecordsMax > 1 ?
+                                    decodeNotHandshakingBatch(server, buffer, tlsRecordDataOffset, tlsRecordDataLimit, limit) :
+                                    tlsRecordDataLimit;
+
+                                if (tlsBatchDataLimit != tlsRecordDataLimit)
+                                {
+                                    // first record header spans the batch, consumed as one by decodeNotHandshakingUnwrapped
+                                    buffer.putShort(tlsRecordDataOffset - Short.BYTES,
+                                            (short) (tlsBatchDataLimit - tlsRecordDataOffset), BIG_ENDIAN);
+                                }
+
+                                tlsUnwrappedDataRW.wrap(buffer, tlsRecordDataOffset, tlsBatchDataLimit)
+                                                  .payload(outAppBuffer, 0, outAppByteBuffer.position())
                                                   .build();
 
                                 server.decoder = decodeNotHandshakingUnwrapped;
@@ -654,6 +713,12 @@ public final class TlsServerFactory implements StreamFactory
                 {
                     progress += bytesConsumed;
                     server.decoder = decodeHandshake;
+
+                    if (server.tlsEngine.isInboundDone())
+                    {
+                        // close_notify unwrapped at end of batch
+                        server.onDecodeInboundClosed(traceId);
+                    }
                 }
                 else
                 {
@@ -667,6 +732,51 @@ public final class TlsServerFactory implements StreamFactory
         return progress;
     }
 
+    private int decodeNotHandshakingBatch(
+        TlsServer server,
+        MutableDirectBuffer buffer,
+        int tlsBatchDataOffset,
+        int tlsBatchDataLimit,
+        int limit) throws SSLException
+    {
+        final TlsServer.TlsStream stream = server.stream.orElse(null);
+        final int initialBudget = stream != null ? stream.initialBudget : 0;
+        final int applicationBufferSize = server.tlsEngine.getSession().getApplicationBufferSize();
+
+        int batchRecords = 1;
+        boolean batching = true;
+
+        while (batching &&
+               batchRecords < decodeBatchRecordsMax &&
+               outAppByteBuffer.position() < initialBudget &&
+               outAppByteBuffer.remaining() >= applicationBufferSize)
+        {
+            final TlsRecordInfoFW tlsRecordInfo = tlsRecordInfoRO.tryWrap(buffer, tlsBatchDataLimit, limit);
+            final int tlsRecordDataLimit = tlsRecordInfo != null ? tlsRecordInfo.limit() + tlsRecordInfo.length() : limit + 1;
+
+            batching = tlsRecordDataLimit <= limit &&
+                       tlsRecordDataLimit - tlsBatchDataOffset <= MAXIMUM_BATCH_LENGTH &&
+                       tlsRecordInfo.type() == TlsContentType.APPLICATION_DATA.value();
+
+            if (batching)
+            {
+                final ByteBuffer netByteBuffer = supplyInNetByteBuffer(server, buffer, tlsBatchDataLimit, tlsRecordDataLimit);
+                final SSLEngineResult result = server.tlsEngine.unwrap(netByteBuffer, outAppByteBuffer);
+                assert result.bytesConsumed() == tlsRecordDataLimit - tlsBatchDataLimit;
+
+                tlsBatchDataLimit = tlsRecordDataLimit;
+                batchRecords++;
+
+                // alerts and post-handshake messages end the batch, handled once the batch is delivered
+                batching = result.getStatus() == Status.OK &&
+                           result.bytesProduced() != 0 &&
+                           result.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING;
+            }
+        }
+
+        return tlsBatchDataLimit;
+    }
+
     private int decodeHandshakeFinished(
         TlsServer server,
         long traceId,
@@ -694,8 +804,8 @@ public final class TlsServerFactory implements StreamFactory
         int progress,
         int limit)
     {
-        server.onDecodeHandshakeNeedTask(traceId, authorization);
         server.decoder = decodeHandshake;
+        server.onDecodeHandshakeNeedTask(traceId, authorization);
         return progress;
     }
 
@@ -713,14 +823,12 @@ public final class TlsServerFactory implements StreamFactory
         final int length = limit - progress;
         if (length != 0)
         {
-            inNetByteBuffer.clear();
-            inNetBuffer.putBytes(0, buffer, progress, length);
-            inNetByteBuffer.limit(length);
+            final ByteBuffer netByteBuffer = supplyInNetByteBuffer(server, buffer, progress, limit);
             outAppByteBuffer.clear();
 
             try
             {
-                final SSLEngineResult result = server.tlsEngine.unwrap(inNetByteBuffer, outAppByteBuffer);
+                final SSLEngineResult result = server.tlsEngine.unwrap(netByteBuffer, outAppByteBuffer);
                 final int bytesConsumed = result.bytesConsumed();
                 final int bytesProduced = result.bytesProduced();
 
@@ -792,12 +900,41 @@ public final class TlsServerFactory implements StreamFactory
         return limit;
     }
 
-    private String decodeServerName(
+    private ByteBuffer supplyInNetByteBuffer(
+        TlsServer server,
+        DirectBuffer buffer,
+        int progress,
+        int limit)
+    {
+        ByteBuffer byteBuffer;
+
+        if (decodeZeroCopy && server.decodeSlot != NO_SLOT)
+        {
+            // decode buffer is always the decode slot, so unwrap directly from slot memory
+            byteBuffer = decodePool.byteBuffer(server.decodeSlot);
+            final int slotOffset = byteBuffer.position();
+            byteBuffer.limit(slotOffset + limit);
+            byteBuffer.position(slotOffset + progress);
+        }
+        else
+        {
+            byteBuffer = inNetByteBuffer;
+            byteBuffer.clear();
+            inNetBuffer.putBytes(0, buffer, progress, limit - progress);
+            byteBuffer.limit(limit - progress);
+        }
+
+        return byteBuffer;
+    }
+
+    private StringFW decodeServerName(
         TlsExtensionFW tlsExtension)
     {
-        String serverName = null;
+        StringFW serverName = null;
 
-        final TlsServerNameExtensionFW tlsServerNameExtension = tlsExtension.data().get(tlsServerNameExtensionRO::wrap);
+        final OctetsFW tlsExtensionData = tlsExtension.data();
+        final TlsServerNameExtensionFW tlsServerNameExtension =
+                tlsServerNameExtensionRO.wrap(tlsExtensionData.buffer(), tlsExtensionData.offset(), tlsExtensionData.limit());
         final TlsVector16FW tlsServerNames = tlsServerNameExtension.serverNames();
         final OctetsFW tlsServerNamesData = tlsServerNames.data();
         final DirectBuffer dataBuffer = tlsServerNamesData.buffer();
@@ -807,7 +944,7 @@ public final class TlsServerFactory implements StreamFactory
             final TlsServerNameFW tlsServerName = tlsServerNameRO.wrap(dataBuffer, dataOffset, dataLimit);
             if (tlsServerName.kind() == TlsNameType.HOSTNAME.value())
             {
-                serverName = tlsServerName.hostname().asString();
+                serverName = tlsServerName.hostname();
                 break;
             }
             dataOffset = tlsServerName.limit();
@@ -816,27 +953,53 @@ public final class TlsServerFactory implements StreamFactory
         return serverName;
     }
 
-    private List<String> decodeApplicationLayerProtocolNegotiation(
-        TlsExtensionFW tlsExtension)
+    // ClientHello buffer is reused before the handshake completes, server names repeat so are copied on cache miss only
+    private String serverName(
+        StringFW tlsServerName)
     {
-        final List<String> protocolNames = new ArrayList<>(3);
+        final DirectBuffer buffer = tlsServerName.buffer();
+        final int offset = tlsServerName.offset() + tlsServerName.fieldSizeLength();
+        final int length = tlsServerName.length();
 
-        final TlsVector16FW tlsExtensionData = tlsExtension.data().get(tlsVector16RO::wrap);
-        final OctetsFW tlsAlpnData = tlsExtensionData.data();
-        final DirectBuffer dataBuffer = tlsAlpnData.buffer();
-        final int dataLimit = tlsAlpnData.limit();
-        for (int dataOffset = tlsAlpnData.offset(); dataOffset < dataLimit; )
+        String serverName = null;
+
+        if (length != -1)
         {
-            final String8FW tlsProtocolName = tlsProtocolNameRO.wrap(dataBuffer, dataOffset, dataLimit);
-            final String protocolName = tlsProtocolName.asString();
-            if (protocolName != null && !protocolName.isEmpty())
+            int hash = 0;
+            for (int i = 0; i < length; i++)
+            {
+                hash = 31 * hash + buffer.getByte(offset + i);
+            }
+            final int index = (hash ^ (hash >>> 16)) & (SERVER_NAME_CACHE_SIZE - 1);
+
+            final byte[] cachedBytes = serverNameBytes[index];
+            boolean cached = cachedBytes != null && cachedBytes.length == length;
+            for (int i = 0; cached && i < length; i++)
             {
-                protocolNames.add(protocolName);
+                cached = cachedBytes[i] == buffer.getByte(offset + i);
             }
-            dataOffset = tlsProtocolName.limit();
+
+            if (!cached)
+            {
+                final byte[] bytes = new byte[length];
+                buffer.getBytes(offset, bytes);
+                serverNameBytes[index] = bytes;
+                serverNames[index] = new String(bytes, UTF_8);
+            }
+
+            serverName = serverNames[index];
         }
 
-        return protocolNames;
+        return serverName;
+    }
+
+    private OctetsFW decodeApplicationLayerProtocolNegotiation(
+        TlsExtensionFW tlsExtension)
+    {
+        final OctetsFW tlsExtensionData = tlsExtension.data();
+        final TlsVector16FW tlsProtocolNames =
+                tlsProtocolNamesRO.wrap(tlsExtensionData.buffer(), tlsExtensionData.offset(), tlsExtensionData.limit());
+        return tlsProtocolNames.data();
     }
 
     @FunctionalInterface
@@ -864,6 +1027,8 @@ public final class TlsServerFactory implements StreamFactory
         private long affinity;
 
         private long handshakeTaskFutureId = NO_CANCEL_ID;
+        private Runnable handshakeTask;
+        private long handshakeStartMillis;
 
         private int decodeSlot = NO_SLOT;
         private int decodeSlotOffset;
@@ -874,6 +1039,14 @@ public final class TlsServerFactory implements StreamFactory
         private int encodeSlotOffset;
         private long encodeSlotTraceId;
 
+        private int wrapSlot = NO_SLOT;
+        private int wrapSlotOffset;
+        private int wrapSlotReserved;
+        private long wrapSlotBudgetId;
+
+        private long encodeRecordBytes;
+        private long encodeRecordMillis;
+
         private int initialBudget;
 
         private long replyBudgetId;
@@ -884,6 +1057,9 @@ public final class TlsServerFactory implements StreamFactory
         private TlsServerDecoder decoder;
         private SSLEngine tlsEngine;
         private TlsStoreInfo tlsStoreInfo;
+        private TlsRouteInfo tlsRoute;
+        private String tlsHostname;
+        private boolean tlsStoreLoadAttempted;
         private Optional<TlsStream> stream;
 
         private TlsServer(
@@ -1056,6 +1232,7 @@ public final class TlsServerFactory implements StreamFactory
             authorization = reset.authorization();
             state = TlsState.closeReply(state);
 
+            cleanupWrapSlotIfNecessary();
             cleanupEncodeSlotIfNecessary();
 
             closeInboundQuietly(tlsEngine);
@@ -1104,9 +1281,28 @@ public final class TlsServerFactory implements StreamFactory
             case HANDSHAKE_TASK_COMPLETE_SIGNAL:
                 onNetworkSignalHandshakeTaskComplete(signal);
                 break;
+            case ENCODE_FLUSH_SIGNAL:
+                doEncodeFlushIfNecessary(signal.traceId());
+                break;
+            case HANDSHAKE_TASK_DEFER_SIGNAL:
+                onNetworkSignalHandshakeTaskDeferred(signal);
+                break;
             }
         }
 
+        private void onNetworkSignalHandshakeTaskDeferred(
+            SignalFW signal)
+        {
+            assert handshakeTaskFutureId != NO_CANCEL_ID;
+            assert handshakeTask != null;
+
+            final Runnable task = handshakeTask;
+            handshakeTask = null;
+            handshakeTaskFutureId = NO_CANCEL_ID;
+
+            doHandshakeTask(signal.traceId(), task);
+        }
+
         private void onNetworkSignalHandshakeTaskComplete(
             SignalFW signal)
         {
@@ -1166,6 +1362,7 @@ public final class TlsServerFactory implements StreamFactory
         private void doNetworkEnd(
             long traceId)
         {
+            cleanupWrapSlotIfNecessary();
             cleanupEncodeSlotIfNecessary();
             doEnd(network, routeId, replyId, traceId, authorization, EMPTY_EXTENSION);
             state = TlsState.closeReply(state);
@@ -1189,6 +1386,7 @@ public final class TlsServerFactory implements StreamFactory
                 state = TlsState.closeReply(state);
             }
 
+            cleanupWrapSlotIfNecessary();
             cleanupEncodeSlotIfNecessary();
         }
 
@@ -1378,11 +1576,12 @@ public final class TlsServerFactory implements StreamFactory
             long authorization,
             TlsClientHelloFW tlsClientHello)
         {
-            String tlsHostname = null;
-            List<String> tlsProtocols = null;
+            StringFW tlsServerName = null;
+            OctetsFW tlsProtocols = null;
 
             final OctetsFW extensions = tlsClientHello.extensions();
-            final TlsVector16FW tlsExtensions = extensions.get(tlsVector16RO::tryWrap);
+            final TlsVector16FW tlsExtensions =
+                    tlsVector16RO.tryWrap(extensions.buffer(), extensions.offset(), extensions.limit());
 
             if (tlsExtensions != null)
             {
@@ -1390,7 +1589,6 @@ public final class TlsServerFactory implements StreamFactory
                 final DirectBuffer buffer = tlsExtensionsData.buffer();
                 final int maxLimit = tlsExtensionsData.limit();
 
-                // TODO: reuse TlsRouter instance, with RouteFW resolve(routeId, authorization) method
                 for (int offset = tlsExtensionsData.offset(); offset < maxLimit; )
                 {
                     final TlsExtensionFW tlsExtension = tlsExtensionRO.wrap(buffer, offset, maxLimit);
@@ -1400,7 +1598,7 @@ public final class TlsServerFactory implements StreamFactory
                         switch (tlsExtensionType)
                         {
                         case SERVER_NAME:
-                            tlsHostname = decodeServerName(tlsExtension);
+                            tlsServerName = decodeServerName(tlsExtension);
                             break;
                         case APPLICATION_LAYER_PROTOCOL_NEGOTIATION:
                             tlsProtocols = decodeApplicationLayerProtocolNegotiation(tlsExtension);
@@ -1413,37 +1611,44 @@ public final class TlsServerFactory implements StreamFactory
                 }
             }
 
-            final String tlsHostname0 = tlsHostname;
-            final List<String> tlsProtocols0 = tlsProtocols;
-            final MessagePredicate filter = (t, b, i, l) ->
-            {
-                final TlsRouteExFW routeEx = wrapRouteEx.apply(t, b, i, l);
-
-                final String hostname = routeEx.hostname().asString();
-                final String protocol = routeEx.protocol().asString();
-
-                return (hostname == null || Objects.equals(tlsHostname0, hostname)) &&
-                        (protocol == null || tlsProtocols0 == null || tlsProtocols0.contains(protocol));
-            };
-
-            final RouteFW route = router.resolve(routeId, authorization, filter, wrapRoute);
+            final TlsRouteInfo route = routeIndex.resolve(routeId, authorization, tlsServerName, tlsProtocols);
             if (route != null)
             {
-                final TlsRouteExFW routeEx = route.extension().get(tlsRouteExRO.get()::tryWrap);
-                final String store = routeEx != null ? routeEx.store().asString() : null;
-                final TlsStoreInfo newTlsStoreInfo = lookupStore.apply(store);
-                final SSLContext sslContext = newTlsStoreInfo == null ? null : newTlsStoreInfo.context;
+                final TlsStoreInfo newTlsStoreInfo = lookupStore.apply(route.store);
 
-                if (sslContext != null)
+                SSLEngine newTlsEngine = null;
+                if (newTlsStoreInfo != null)
                 {
-                    final SSLEngine newTlsEngine = sslContext.createSSLEngine();
-                    newTlsEngine.setUseClientMode(false);
-                    if (newTlsStoreInfo.supportsClientAuth)
+                    if (serverEnginePool)
+                    {
+                        newTlsEngine = newTlsStoreInfo.pollServerEngine();
+                        if (newTlsEngine != null)
+                        {
+                            counters.serverEnginePoolHits.getAsLong();
+                        }
+                        else
+                        {
+                            counters.serverEnginePoolMisses.getAsLong();
+                        }
+                    }
+
+                    if (newTlsEngine == null)
                     {
-                        newTlsEngine.setWantClientAuth(true);
+                        newTlsEngine = newTlsStoreInfo.newServerEngine();
                     }
+                }
 
-                    final String protocol = routeEx.protocol().asString();
+                if (newTlsEngine == null && newTlsStoreInfo != null && !tlsStoreLoadAttempted)
+                {
+                    // lazy store not loaded or evicted, ClientHello is decoded again once the load task signals completion
+                    tlsStoreLoadAttempted = true;
+                    doHandshakeTask(traceId, newTlsStoreInfo::load);
+                }
+                else if (newTlsEngine != null)
+                {
+                    newTlsStoreInfo.touch();
+
+                    final String protocol = route.protocol;
                     if (protocol != null)
                     {
                         newTlsEngine.setHandshakeApplicationProtocolSelector((ex, ps) -> protocol);
@@ -1451,6 +1656,11 @@ public final class TlsServerFactory implements StreamFactory
 
                     tlsEngine = newTlsEngine;
                     tlsStoreInfo = newTlsStoreInfo;
+                    tlsRoute = route;
+                    tlsHostname = route.hostname != null && !route.wildcard || tlsServerName == null
+                            ? route.hostname
+                            : serverName(tlsServerName);
+                    handshakeStartMillis = System.currentTimeMillis();
                 }
             }
         }
@@ -1463,43 +1673,55 @@ public final class TlsServerFactory implements StreamFactory
             {
                 final Runnable task = tlsEngine.getDelegatedTask();
                 assert task != null;
-                handshakeTaskFutureId = signaler.signalTask(task, routeId, replyId, HANDSHAKE_TASK_COMPLETE_SIGNAL);
+                doHandshakeTask(traceId, handshakeTaskDrain ? () -> runDelegatedTasks(tlsEngine, task) : task);
             }
         }
 
-        private void onDecodeHandshakeFinished(
+        private void doHandshakeTask(
             long traceId,
-            long budgetId)
+            Runnable task)
         {
-            ExtendedSSLSession tlsSession = (ExtendedSSLSession) tlsEngine.getSession();
-            List<SNIServerName> serverNames = tlsSession.getRequestedServerNames();
-            String alpn = tlsEngine.getApplicationProtocol();
-
-            String tlsHostname = serverNames.stream()
-                                            .filter(SNIHostName.class::isInstance)
-                                            .map(SNIHostName.class::cast)
-                                            .map(SNIHostName::getAsciiName)
-                                            .findFirst()
-                                            .orElse(null);
+            handshakeTaskFutureId = signalHandshakeTask(task, routeId, replyId);
 
-            String tlsProtocol = "".equals(alpn) ? null : alpn;
-
-            final MessagePredicate filter = (t, b, i, l) ->
+            if (handshakeTaskFutureId == NO_CANCEL_ID)
             {
-                final TlsRouteExFW routeEx = wrapRouteEx.apply(t, b, i, l);
+                counters.handshakeTaskRejections.getAsLong();
+
+                if (handshakeTaskQueueFullReset)
+                {
+                    decoder = decodeIgnoreAll;
+                    cleanupNetwork(traceId);
+                }
+                else
+                {
+                    // decoding and network window stay paused until the task is accepted
+                    handshakeTask = task;
+                    handshakeTaskFutureId = signaler.signalAt(System.currentTimeMillis() + handshakeTaskDeferMillis,
+                            routeId, replyId, HANDSHAKE_TASK_DEFER_SIGNAL);
+                }
+            }
+        }
 
-                final String hostname = routeEx.hostname().asString();
-                final String protocol = routeEx.protocol().asString();
+        private void onDecodeHandshakeFinished(
+            long traceId,
+            long budgetId)
+        {
+            onDecodeSessionFinished(tlsEngine.getSession());
 
-                return (hostname == null || Objects.equals(tlsHostname, hostname)) &&
-                        (protocol == null || Objects.equals(tlsProtocol, protocol));
-            };
+            TlsRouteInfo route = tlsRoute;
+            String tlsProtocol = route.protocol;
 
-            final RouteFW route = router.resolve(routeId, authorization, filter, wrapRoute);
+            // route matched at ClientHello selected the protocol, unless the client did not negotiate it
+            if (tlsProtocol != null && !tlsProtocol.equals(tlsEngine.getApplicationProtocol()))
+            {
+                final String alpn = tlsEngine.getApplicationProtocol();
+                tlsProtocol = alpn == null || alpn.isEmpty() ? null : alpn;
+                route = routeIndex.resolve(routeId, authorization, tlsHostname, tlsProtocol);
+            }
 
             if (route != null)
             {
-                final long routeId = route.correlationId();
+                final long routeId = route.routeId;
 
                 final TlsStream stream = new TlsStream(routeId, tlsEngine);
                 correlations.put(stream.replyId, stream);
@@ -1512,6 +1734,44 @@ public final class TlsServerFactory implements StreamFactory
             }
         }
 
+        private void onDecodeSessionFinished(
+            SSLSession tlsSession)
+        {
+            // resumed sessions were created by an earlier handshake, SunJSSE keeps the original creation time
+            // when resuming TLS 1.2 session ids and TLS 1.3 pre-shared keys, providers creating a fresh session
+            // on TLS 1.3 resumption count it as a miss, as do resumptions within the millisecond of the original
+            if (tlsSession.getCreationTime() < handshakeStartMillis)
+            {
+                counters.serverSessionCacheHits.getAsLong();
+            }
+            else
+            {
+                counters.serverSessionCacheMisses.getAsLong();
+                onDecodeCertificateServed(tlsSession);
+            }
+        }
+
+        private void onDecodeCertificateServed(
+            SSLSession tlsSession)
+        {
+            final Certificate[] certificates = tlsSession.getLocalCertificates();
+            if (certificates != null && certificates.length > 0)
+            {
+                switch (certificates[0].getPublicKey().getAlgorithm())
+                {
+                case "EC":
+                    counters.serverCertificatesEcdsa.getAsLong();
+                    break;
+                case "RSA":
+                case "RSASSA-PSS":
+                    counters.serverCertificatesRsa.getAsLong();
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+
         private void onDecodeUnwrapped(
             long traceId,
             long authorization,
@@ -1543,15 +1803,47 @@ public final class TlsServerFactory implements StreamFactory
             inAppByteBuffer.clear();
             inAppBuffer.putBytes(0, buffer, offset, length);
             inAppByteBuffer.limit(length);
+
+            doEncodeWrap(traceId, budgetId, inAppByteBuffer);
+        }
+
+        private void doEncodeWrap(
+            long traceId,
+            long budgetId,
+            ByteBuffer appByteBuffer)
+        {
+            final int appLimit = appByteBuffer.limit();
             outNetByteBuffer.clear();
 
+            if (encodeRecordDynamic && appByteBuffer.hasRemaining())
+            {
+                final long now = System.currentTimeMillis();
+                if (now - encodeRecordMillis > encodeRecordIdleMillis)
+                {
+                    // small records again after idle, congestion window likely reset
+                    encodeRecordBytes = 0L;
+                }
+                encodeRecordMillis = now;
+            }
+
             try
             {
+                int overhead = 0;
+
                 loop:
                 do
                 {
-                    final SSLEngineResult result = tlsEngine.wrap(inAppByteBuffer, outNetByteBuffer);
+                    if (encodeRecordDynamic)
+                    {
+                        final int remaining = appLimit - appByteBuffer.position();
+                        final int recordSize = encodeRecordSize(encodeRecordBytes, overhead, remaining);
+                        appByteBuffer.limit(Math.min(appByteBuffer.position() + recordSize, appLimit));
+                    }
+
+                    final SSLEngineResult result = tlsEngine.wrap(appByteBuffer, outNetByteBuffer);
                     final int bytesProduced = result.bytesProduced();
+                    encodeRecordBytes += result.bytesConsumed();
+                    overhead += bytesProduced - result.bytesConsumed();
 
                     switch (result.getStatus())
                     {
@@ -1572,7 +1864,7 @@ public final class TlsServerFactory implements StreamFactory
                         }
                         break;
                     }
-                } while (inAppByteBuffer.hasRemaining());
+                } while (appByteBuffer.position() < appLimit);
 
                 final int outNetBytesProduced = outNetByteBuffer.position();
                 doNetworkData(traceId, budgetId, outNetBuffer, 0, outNetBytesProduced);
@@ -1583,6 +1875,67 @@ public final class TlsServerFactory implements StreamFactory
             }
         }
 
+        private void doEncodeCoalesce(
+            long traceId,
+            long budgetId,
+            int reserved,
+            OctetsFW payload)
+        {
+            final int length = payload.sizeof();
+
+            if (wrapSlotOffset + length > encodePool.slotCapacity())
+            {
+                doEncodeFlushIfNecessary(traceId);
+            }
+
+            if (wrapSlot == NO_SLOT && length < MAXIMUM_RECORD_SIZE)
+            {
+                wrapSlot = encodePool.acquire(replyId);
+            }
+
+            if (wrapSlot == NO_SLOT)
+            {
+                doEncodeWrap(traceId, budgetId, payload);
+            }
+            else
+            {
+                if (wrapSlotOffset == 0)
+                {
+                    // flush at end of burst, after currently queued application frames
+                    signaler.signalNow(routeId, replyId, ENCODE_FLUSH_SIGNAL);
+                }
+
+                final MutableDirectBuffer wrapBuffer = encodePool.buffer(wrapSlot);
+                wrapBuffer.putBytes(wrapSlotOffset, payload.buffer(), payload.offset(), length);
+                wrapSlotOffset += length;
+                wrapSlotReserved += reserved;
+                wrapSlotBudgetId = budgetId;
+
+                if (wrapSlotOffset >= MAXIMUM_RECORD_SIZE)
+                {
+                    doEncodeFlushIfNecessary(traceId);
+                }
+            }
+        }
+
+        private void doEncodeFlushIfNecessary(
+            long traceId)
+        {
+            if (wrapSlot != NO_SLOT)
+            {
+                final ByteBuffer wrapByteBuffer = encodePool.byteBuffer(wrapSlot);
+                wrapByteBuffer.limit(wrapByteBuffer.position() + wrapSlotOffset);
+
+                final long budgetId = wrapSlotBudgetId;
+                wrapSlotOffset = 0;
+                wrapSlotReserved = 0;
+
+                doEncodeWrap(traceId, budgetId, wrapByteBuffer);
+
+                cleanupWrapSlotIfNecessary();
+            }
+        }
+
         private void doEncodeCloseOutbound(
             long traceId,
             long budgetId)
@@ -1629,6 +1982,17 @@ public final class TlsServerFactory implements StreamFactory
             }
         }
 
+        private void cleanupWrapSlotIfNecessary()
+        {
+            if (wrapSlot != NO_SLOT)
+            {
+                encodePool.release(wrapSlot);
+                wrapSlot = NO_SLOT;
+                wrapSlotOffset = 0;
+                wrapSlotReserved = 0;
+            }
+        }
+
         private void cleanupEncodeSlotIfNecessary()
         {
             if (encodeSlot != NO_SLOT)
@@ -1729,7 +2093,19 @@ public final class TlsServerFactory implements StreamFactory
                     final long budgetId = data.budgetId();
                     final OctetsFW payload = data.payload();
 
-                    doEncodeWrap(traceId, budgetId, payload);
+                    if (encodeCoalesce)
+                    {
+                        doEncodeCoalesce(traceId, budgetId, data.reserved(), payload);
+
+                        if (replyBudget <= TlsServer.this.replyPadding + replyPaddingAdjust)
+                        {
+                            doEncodeFlushIfNecessary(traceId);
+                        }
+                    }
+                    else
+                    {
+                        doEncodeWrap(traceId, budgetId, payload);
+                    }
                 }
             }
 
@@ -1742,6 +2118,7 @@ public final class TlsServerFactory implements StreamFactory
                 state = TlsState.closeReply(state);
                 stream = nullIfClosed(state, stream);
 
+                doEncodeFlushIfNecessary(traceId);
                 doEncodeCloseOutbound(traceId, budgetId);
             }
 
@@ -1876,7 +2253,8 @@ public final class TlsServerFactory implements StreamFactory
             private void flushApplicationWindow(
                 long traceId)
             {
-                int replyCredit = TlsServer.this.replyBudget - TlsServer.this.encodeSlotOffset - replyBudget;
+                int replyCredit = TlsServer.this.replyBudget - TlsServer.this.encodeSlotOffset -
+                        TlsServer.this.wrapSlotReserved - replyBudget;
                 if (replyCredit > 0 && TlsState.replyOpened(state))
                 {
                     final int replyPadding = TlsServer.this.replyPadding + replyPaddingAdjust;
@@ -1901,15 +2279,7 @@ public final class TlsServerFactory implements StreamFactory
 
             try
             {
-                Certificate[] certs = tlsSession.getPeerCertificates();
-                if (certs.length > 1)
-                {
-                    Certificate signingCaCert = certs[1];
-                    X509Certificate signingCaX509Cert = (X509Certificate) signingCaCert;
-                    X500Principal x500Principal = signingCaX509Cert.getSubjectX500Principal();
-                    String distinguishedName = x500Principal.getName();
-                    authorization = tlsStoreInfo.authorization(distinguishedName);
-                }
+                authorization = tlsStoreInfo.authorization(tlsSession);
             }
             catch (SSLPeerUnverifiedException e)
             {
@@ -1920,6 +2290,72 @@ public final class TlsServerFactory implements StreamFactory
         }
     }
 
+    private long signalHandshakeTask(
+        Runnable task,
+        long routeId,
+        long streamId)
+    {
+        final long submitNanos = System.nanoTime();
+        counters.handshakeTaskQueueDepth.accept(1L);
+
+        final Runnable timedTask = () ->
+        {
+            counters.handshakeTaskQueueDepth.accept(-1L);
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                counters.handshakeTaskLatencyNanos.accept(System.nanoTime() - submitNanos);
+                counters.handshakeTaskCompletions.accept(1L);
+            }
+        };
+
+        final long taskId = handshakeExecutor != null
+                ? handshakeExecutor.signalTask(timedTask, signaler, routeId, streamId, HANDSHAKE_TASK_COMPLETE_SIGNAL)
+                : signaler.signalTask(timedTask, routeId, streamId, HANDSHAKE_TASK_COMPLETE_SIGNAL);
+
+        if (taskId == NO_CANCEL_ID)
+        {
+            counters.handshakeTaskQueueDepth.accept(-1L);
+        }
+
+        return taskId;
+    }
+
+    // small records while warming up, as long as their overhead fits the padding reserved for full size records
+    private int encodeRecordSize(
+        long encodeRecordBytes,
+        int overhead,
+        int remaining)
+    {
+        int recordSize = MAXIMUM_RECORD_SIZE;
+
+        if (encodeRecordBytes < encodeRecordWarmupBytes)
+        {
+            final int remainingFullSize = Math.max(remaining - encodeRecordInitialSize, 0);
+            final int records = 1 + (remainingFullSize + MAXIMUM_RECORD_SIZE - 1) / MAXIMUM_RECORD_SIZE;
+            if (overhead + records * MAXIMUM_HEADER_SIZE <= replyPaddingAdjust)
+            {
+                recordSize = encodeRecordInitialSize;
+            }
+        }
+
+        return recordSize;
+    }
+
+    private static void runDelegatedTasks(
+        SSLEngine tlsEngine,
+        Runnable task)
+    {
+        // tasks made available by earlier tasks run in the same submission, one signal per handshake step
+        for (Runnable next = task; next != null; next = tlsEngine.getDelegatedTask())
+        {
+            next.run();
+        }
+    }
+
     private static void closeInboundQuietly(
         SSLEngine tlsEngine)
     {
@@ -30,12 +30,18 @@ import org.reaktivity.nukleus.stream.StreamFactory;
 import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
 import org.reaktivity.nukleus.tls.internal.TlsConfiguration;
 import org.reaktivity.nukleus.tls.internal.TlsCounters;
+import org.reaktivity.nukleus.tls.internal.TlsHandshakeExecutor;
+import org.reaktivity.nukleus.tls.internal.TlsRouteIndex;
 import org.reaktivity.nukleus.tls.internal.TlsStoreInfo;
+import org.reaktivity.nukleus.tls.internal.TlsStoreLoader;
 
 public final class TlsServerFactoryBuilder implements StreamFactoryBuilder
 {
     private final TlsConfiguration config;
     private final Function<String, TlsStoreInfo> lookupStore;
+    private final TlsRouteIndex routeIndex;
+    private final TlsHandshakeExecutor handshakeExecutor;
+    private final TlsStoreLoader storeLoader;
 
     private RouteManager router;
     private Signaler signaler;
@@ -49,10 +55,16 @@ public final class TlsServerFactoryBuilder implements StreamFactoryBuilder
 
     public TlsServerFactoryBuilder(
         TlsConfiguration config,
-        Function<String, TlsStoreInfo> lookupStore)
+        Function<String, TlsStoreInfo> lookupStore,
+        TlsRouteIndex routeIndex,
+        TlsHandshakeExecutor handshakeExecutor,
+        TlsStoreLoader storeLoader)
     {
         this.config = config;
         this.lookupStore = lookupStore;
+        this.routeIndex = routeIndex;
+        this.handshakeExecutor = handshakeExecutor;
+        this.storeLoader = storeLoader;
     }
 
     @Override
@@ -132,6 +144,7 @@ public final class TlsServerFactoryBuilder implements StreamFactoryBuilder
     {
         final BufferPool bufferPool = supplyBufferPool.get();
         final TlsCounters counters = new TlsCounters(supplyCounter, supplyAccumulator);
+        storeLoader.bind(counters);
 
         return new TlsServerFactory(
             config,
@@ -143,6 +156,8 @@ public final class TlsServerFactoryBuilder implements StreamFactoryBuilder
             supplyReplyId,
             supplyTypeId,
             lookupStore,
+            routeIndex,
+            handshakeExecutor,
             counters);
     }
 }
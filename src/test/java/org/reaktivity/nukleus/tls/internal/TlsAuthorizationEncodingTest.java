@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class TlsAuthorizationEncodingTest
+{
+    @Test
+    public void shouldEncodeStoreIndexAndFirstCa()
+    {
+        final TlsAuthorizationEncoding encoding = new TlsAuthorizationEncoding(8, 1);
+
+        assertThat(encoding.encode(1, 0L), equalTo(0x0100_0000_0000_0001L));
+        assertThat(encoding.encode(255, 55L), equalTo(0xff80_0000_0000_0000L));
+        assertThat(encoding.storeIndex(encoding.encode(255, 55L)), equalTo(255));
+    }
+
+    @Test
+    public void shouldReportCapacities()
+    {
+        final TlsAuthorizationEncoding encoding = new TlsAuthorizationEncoding(8, 2);
+
+        assertThat(encoding.storeCapacity(), equalTo(256));
+        assertThat(encoding.caCapacity(), equalTo(56L * 55L / 2L));
+    }
+
+    @Test
+    public void shouldEncodeCaCodesThatNeverMaskEachOther()
+    {
+        final TlsAuthorizationEncoding encoding = new TlsAuthorizationEncoding(16, 2);
+        final long caCapacity = encoding.caCapacity();
+
+        for (long rank = 0L; rank < caCapacity; rank++)
+        {
+            final long authorization = encoding.encode(3, rank);
+            assertThat(encoding.storeIndex(authorization), equalTo(3));
+            assertThat(Long.bitCount(authorization & 0x0000_ffff_ffff_ffffL), equalTo(2));
+
+            for (long other = 0L; other < caCapacity; other++)
+            {
+                if (other != rank)
+                {
+                    final long routeAuthorization = encoding.encode(3, other);
+                    assertThat(authorization & routeAuthorization, not(equalTo(routeAuthorization)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotMaskOtherStore()
+    {
+        final TlsAuthorizationEncoding encoding = new TlsAuthorizationEncoding(8, 1);
+        final long authorization = encoding.encode(1, 0L);
+        final long routeAuthorization = encoding.encode(3, 0L);
+
+        assertThat(authorization & routeAuthorization, not(equalTo(routeAuthorization)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTooManyStoreBits()
+    {
+        new TlsAuthorizationEncoding(17, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTooHeavyCaWeight()
+    {
+        new TlsAuthorizationEncoding(8, 29);
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.reaktivity.nukleus.tls.internal.TlsKeyStores.chain;
+import static org.reaktivity.nukleus.tls.internal.TlsKeyStores.generateCertificateAuthority;
+import static org.reaktivity.nukleus.tls.internal.TlsKeyStores.generateKeyPair;
+import static org.reaktivity.nukleus.tls.internal.TlsKeyStores.sha256;
+import static org.reaktivity.nukleus.tls.internal.TlsKeyStores.signKeyPair;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.Set;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TlsCachingTrustManagerTest
+{
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    private static X509Certificate[] chain;
+    private static X509Certificate[] forged;
+    private static X509Certificate[] expired;
+    private static X509Certificate[] otherHost;
+    private static X509Certificate[] issuedByLeaf;
+    private static X509Certificate certificateAuthority;
+
+    @BeforeClass
+    public static void generateKeyStore() throws Exception
+    {
+        final Path keyStore = FOLDER.getRoot().toPath().resolve("keys");
+        generateCertificateAuthority(keyStore, "ca");
+        generateKeyPair(keyStore, "example.com", "EC", "example.com");
+        signKeyPair(keyStore, "example.com", "ca", "example.com");
+        generateKeyPair(keyStore, "attacker", "EC", "example.com", "-ext", "san=dns:example.com");
+        generateKeyPair(keyStore, "expired", "EC", "example.com", "-startdate", "-2d", "-validity", "1");
+        generateKeyPair(keyStore, "example.net", "EC", "example.net");
+        signKeyPair(keyStore, "example.net", "ca", "example.net");
+        generateKeyPair(keyStore, "issued.by.leaf", "EC", "example.com");
+        signKeyPair(keyStore, "issued.by.leaf", "example.com", "example.com");
+
+        final KeyStore store = TlsKeyStores.load(keyStore);
+        chain = chain(store, "example.com");
+        certificateAuthority = chain[1];
+        forged = new X509Certificate[] { chain(store, "attacker")[0], certificateAuthority };
+        expired = chain(store, "expired");
+        otherHost = chain(store, "example.net");
+        issuedByLeaf = chain(store, "issued.by.leaf");
+    }
+
+    @Test
+    public void shouldAcceptChainSignedUpToPinnedKeyWithoutDelegate() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(false);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(certificateAuthority));
+
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", newClientEngine("example.com"));
+
+        assertThat(delegate.checks, equalTo(0));
+    }
+
+    @Test(expected = CertificateException.class)
+    public void shouldRejectForgedLeafInFrontOfPinnedCertificate() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(certificateAuthority));
+
+        trustManager.checkServerTrusted(forged, "ECDHE_ECDSA", newClientEngine("example.com"));
+    }
+
+    @Test(expected = CertificateException.class)
+    public void shouldRejectExpiredPinnedCertificate() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(expired[0]));
+
+        trustManager.checkServerTrusted(expired, "ECDHE_ECDSA", newClientEngine("example.com"));
+    }
+
+    @Test(expected = CertificateException.class)
+    public void shouldRejectChainWithoutPinnedKey() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(expired[0]));
+
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", newClientEngine("example.com"));
+    }
+
+    @Test(expected = CertificateException.class)
+    public void shouldRejectPinnedChainForOtherHostname() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(certificateAuthority));
+
+        trustManager.checkServerTrusted(otherHost, "ECDHE_ECDSA", newClientEngine("example.com"));
+    }
+
+    @Test(expected = CertificateException.class)
+    public void shouldRejectCertificateIssuedByLeafUnderPinnedKey() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(certificateAuthority));
+
+        assertThat(issuedByLeaf.length, equalTo(3));
+        trustManager.checkServerTrusted(issuedByLeaf, "ECDHE_ECDSA", newClientEngine("example.com"));
+    }
+
+    @Test
+    public void shouldAcceptPinnedLeafNamingHostname() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(false);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(chain[0]));
+
+        trustManager.checkServerTrusted(new X509Certificate[] { chain[0] }, "ECDHE_ECDSA", newClientEngine("example.com"));
+
+        assertThat(delegate.checks, equalTo(0));
+    }
+
+    @Test
+    public void shouldDelegateUnpinnedHostname() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 0, 0L, pin(certificateAuthority));
+
+        trustManager.checkServerTrusted(forged, "ECDHE_ECDSA", newClientEngine("example.net"));
+
+        assertThat(delegate.checks, equalTo(1));
+    }
+
+    @Test
+    public void shouldCacheVerifiedChainUntilTimeout() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 16, 60_000L, emptyMap());
+        final SSLEngine engine = newClientEngine("example.com");
+
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", engine);
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", engine);
+        trustManager.checkClientTrusted(chain, "ECDHE_ECDSA", engine);
+        trustManager.checkClientTrusted(chain, "ECDHE_ECDSA", engine);
+
+        assertThat(delegate.checks, equalTo(2));
+    }
+
+    @Test
+    public void shouldNotCacheVerifiedChainBeyondTimeout() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 16, 0L, emptyMap());
+        final SSLEngine engine = newClientEngine("example.com");
+
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", engine);
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", engine);
+
+        assertThat(delegate.checks, equalTo(2));
+    }
+
+    @Test
+    public void shouldNotCacheVerifiedChainBeyondNotAfter() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 16, 60_000L, emptyMap());
+        final SSLEngine engine = newClientEngine("example.com");
+
+        trustManager.checkServerTrusted(expired, "ECDHE_ECDSA", engine);
+        trustManager.checkServerTrusted(expired, "ECDHE_ECDSA", engine);
+
+        assertThat(delegate.checks, equalTo(2));
+    }
+
+    @Test
+    public void shouldCacheVerifiedChainPerPeerHost() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 16, 60_000L, emptyMap());
+
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", newClientEngine("example.com"));
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", newClientEngine("example.net"));
+
+        assertThat(delegate.checks, equalTo(2));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyVerifiedChain() throws Exception
+    {
+        final CountingTrustManager delegate = new CountingTrustManager(true);
+        final TlsCachingTrustManager trustManager = new TlsCachingTrustManager(delegate, 1, 60_000L, emptyMap());
+        final SSLEngine engine = newClientEngine("example.com");
+
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", engine);
+        trustManager.checkServerTrusted(forged, "ECDHE_ECDSA", engine);
+        trustManager.checkServerTrusted(chain, "ECDHE_ECDSA", engine);
+
+        assertThat(delegate.checks, equalTo(3));
+    }
+
+    private static Map<String, Set<ByteBuffer>> pin(
+        X509Certificate certificate) throws Exception
+    {
+        return singletonMap("example.com", singleton(ByteBuffer.wrap(sha256(certificate))));
+    }
+
+    private static SSLEngine newClientEngine(
+        String hostname) throws Exception
+    {
+        final SSLEngine engine = SSLContext.getDefault().createSSLEngine(hostname, 443);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    private static final class CountingTrustManager extends X509ExtendedTrustManager
+    {
+        private final boolean trusted;
+
+        private int checks;
+
+        private CountingTrustManager(
+            boolean trusted)
+        {
+            this.trusted = trusted;
+        }
+
+        @Override
+        public void checkClientTrusted(
+            X509Certificate[] chain,
+            String authType) throws CertificateException
+        {
+            check();
+        }
+
+        @Override
+        public void checkClientTrusted(
+            X509Certificate[] chain,
+            String authType,
+            Socket socket) throws CertificateException
+        {
+            check();
+        }
+
+        @Override
+        public void checkClientTrusted(
+            X509Certificate[] chain,
+            String authType,
+            SSLEngine engine) throws CertificateException
+        {
+            check();
+        }
+
+        @Override
+        public void checkServerTrusted(
+            X509Certificate[] chain,
+            String authType) throws CertificateException
+        {
+            check();
+        }
+
+        @Override
+        public void checkServerTrusted(
+            X509Certificate[] chain,
+            String authType,
+            Socket socket) throws CertificateException
+        {
+            check();
+        }
+
+        @Override
+        public void checkServerTrusted(
+            X509Certificate[] chain,
+            String authType,
+            SSLEngine engine) throws CertificateException
+        {
+            check();
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+
+        private void check() throws CertificateException
+        {
+            checks++;
+            if (!trusted)
+            {
+                throw new CertificateException("untrusted");
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.handshake;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.newClientEngine;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.newKeyManager;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.newServerEngine;
+import static org.reaktivity.nukleus.tls.internal.TlsKeyStores.generateKeyPair;
+
+import java.nio.file.Path;
+import java.security.KeyStore;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TlsDualKeyManagerTest
+{
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    private static KeyStore p256KeyStore;
+    private static KeyStore p384KeyStore;
+
+    @BeforeClass
+    public static void generateKeyStores() throws Exception
+    {
+        final Path p256Keys = FOLDER.getRoot().toPath().resolve("p256");
+        generateKeyPair(p256Keys, "rsa", "RSA", "example.com");
+        generateKeyPair(p256Keys, "ec", "EC", "example.com", "-sigalg", "SHA384withECDSA");
+        p256KeyStore = TlsKeyStores.load(p256Keys);
+
+        final Path p384Keys = FOLDER.getRoot().toPath().resolve("p384");
+        generateKeyPair(p384Keys, "rsa", "RSA", "example.com");
+        generateKeyPair(p384Keys, "ec", "EC384", "example.com");
+        p384KeyStore = TlsKeyStores.load(p384Keys);
+    }
+
+    @Test
+    public void shouldPreferEcdsa() throws Exception
+    {
+        assertThat(serve(p256KeyStore, "TLSv1.3"), equalTo("EC"));
+        assertThat(serve(p384KeyStore, "TLSv1.3"), equalTo("EC"));
+    }
+
+    @Test
+    public void shouldServeRsaWhenClientOmitsEcdsaSchemeForCurve() throws Exception
+    {
+        // certificate signature still permitted by ecdsa_secp384r1_sha384, but P-256 key needs ecdsa_secp256r1_sha256
+        assertThat(serve(p256KeyStore, "TLSv1.3", "ecdsa_secp256r1_sha256"), equalTo("RSA"));
+    }
+
+    @Test
+    public void shouldServeEcdsaWhenClientOffersSchemeForCurve() throws Exception
+    {
+        assertThat(serve(p384KeyStore, "TLSv1.3", "ecdsa_secp256r1_sha256", "ecdsa_secp521r1_sha512"), equalTo("EC"));
+    }
+
+    @Test
+    public void shouldServeByCipherSuiteBeforeTls13() throws Exception
+    {
+        assertThat(serve(p256KeyStore, "TLSv1.2"), equalTo("EC"));
+    }
+
+    private static String serve(
+        KeyStore keyStore,
+        String protocol,
+        String... disabledAlgorithms) throws Exception
+    {
+        final TlsDualKeyManager keyManager = new TlsDualKeyManager(newKeyManager(keyStore));
+
+        return handshake(newClientEngine("example.com", protocol, disabledAlgorithms), newServerEngine(keyManager))
+                .getPublicKey().getAlgorithm();
+    }
+}
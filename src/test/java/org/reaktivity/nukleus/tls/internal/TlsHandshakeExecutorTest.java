@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.reaktivity.nukleus.concurrent.Signaler.NO_CANCEL_ID;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reaktivity.nukleus.concurrent.Signaler;
+
+public class TlsHandshakeExecutorTest
+{
+    private final Signaler signaler = mock(Signaler.class);
+    private final TlsHandshakeExecutor executor = new TlsHandshakeExecutor(1, 1);
+
+    @After
+    public void close()
+    {
+        executor.close();
+    }
+
+    @Test
+    public void shouldRejectTaskWhenQueueFull() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        assertThat(executor.signalTask(() -> awaitQuietly(started, blocked), signaler, 1L, 2L, 0), not(equalTo(NO_CANCEL_ID)));
+        assertTrue(started.await(10, SECONDS));
+        assertThat(executor.signalTask(() -> {}, signaler, 1L, 2L, 0), not(equalTo(NO_CANCEL_ID)));
+        assertThat(executor.signalTask(() -> {}, signaler, 1L, 2L, 0), equalTo(NO_CANCEL_ID));
+
+        blocked.countDown();
+    }
+
+    @Test
+    public void shouldStopThreadsOnClose() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        executor.signalTask(() -> awaitQuietly(started, blocked), signaler, 1L, 2L, 0);
+        assertTrue(started.await(10, SECONDS));
+        assertThat(handshakeThreads(), not(empty()));
+
+        executor.close();
+
+        for (Thread thread : handshakeThreads())
+        {
+            thread.join(10000L);
+        }
+        assertThat(handshakeThreads(), empty());
+        assertThat(executor.signalTask(() -> {}, signaler, 1L, 2L, 0), equalTo(NO_CANCEL_ID));
+    }
+
+    private static void awaitQuietly(
+        CountDownLatch started,
+        CountDownLatch blocked)
+    {
+        started.countDown();
+        try
+        {
+            blocked.await();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Set<Thread> handshakeThreads()
+    {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("tls-handshake-") && t.isAlive())
+                .collect(Collectors.toSet());
+    }
+}
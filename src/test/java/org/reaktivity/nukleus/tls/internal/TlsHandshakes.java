@@ -0,0 +1,248 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.Arrays.asList;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.AlgorithmConstraints;
+import java.security.AlgorithmParameters;
+import java.security.CryptoPrimitive;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+// drives an in-memory handshake between client and server engines
+final class TlsHandshakes
+{
+    private static final int MAX_STEPS = 64;
+
+    static X509ExtendedKeyManager newKeyManager(
+        KeyStore keyStore) throws Exception
+    {
+        final KeyManagerFactory factory = KeyManagerFactory.getInstance("PKIX");
+        factory.init(keyStore, TlsKeyStores.PASSWORD.toCharArray());
+        return (X509ExtendedKeyManager) factory.getKeyManagers()[0];
+    }
+
+    static SSLEngine newServerEngine(
+        KeyManager keyManager) throws Exception
+    {
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(new KeyManager[] { keyManager }, null, null);
+
+        final SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    // @param disabledAlgorithms signature algorithms the client does not offer, such as SHA256withECDSA
+    static SSLEngine newClientEngine(
+        String hostname,
+        String protocol,
+        String... disabledAlgorithms) throws Exception
+    {
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] { new TrustAllManager() }, null);
+
+        final SSLEngine engine = context.createSSLEngine(hostname, 443);
+        engine.setUseClientMode(true);
+
+        final SSLParameters parameters = engine.getSSLParameters();
+        parameters.setProtocols(new String[] { protocol });
+        parameters.setServerNames(asList(new SNIHostName(hostname)));
+        parameters.setAlgorithmConstraints(new DisabledAlgorithms(disabledAlgorithms));
+        engine.setSSLParameters(parameters);
+
+        return engine;
+    }
+
+    // @return certificate served by the server
+    static X509Certificate handshake(
+        SSLEngine client,
+        SSLEngine server) throws SSLException
+    {
+        final ByteBuffer empty = ByteBuffer.allocate(0);
+        final ByteBuffer clientToServer = ByteBuffer.allocate(65536);
+        final ByteBuffer serverToClient = ByteBuffer.allocate(65536);
+        final ByteBuffer app = ByteBuffer.allocate(65536);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int steps = 0; !isHandshakeComplete(client) || !isHandshakeComplete(server); steps++)
+        {
+            if (steps == MAX_STEPS)
+            {
+                throw new SSLException("handshake incomplete");
+            }
+
+            step(client, empty, clientToServer, serverToClient, app);
+            step(server, empty, serverToClient, clientToServer, app);
+        }
+
+        return (X509Certificate) client.getSession().getPeerCertificates()[0];
+    }
+
+    private static void step(
+        SSLEngine engine,
+        ByteBuffer empty,
+        ByteBuffer outNet,
+        ByteBuffer inNet,
+        ByteBuffer app) throws SSLException
+    {
+        switch (engine.getHandshakeStatus())
+        {
+        case NEED_TASK:
+            for (Runnable task = engine.getDelegatedTask(); task != null; task = engine.getDelegatedTask())
+            {
+                task.run();
+            }
+            break;
+        case NEED_WRAP:
+            engine.wrap(empty, outNet);
+            break;
+        case NEED_UNWRAP:
+            inNet.flip();
+            app.clear();
+            engine.unwrap(inNet, app);
+            inNet.compact();
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static boolean isHandshakeComplete(
+        SSLEngine engine)
+    {
+        final HandshakeStatus status = engine.getHandshakeStatus();
+        return status == HandshakeStatus.NOT_HANDSHAKING || status == HandshakeStatus.FINISHED;
+    }
+
+    private static final class DisabledAlgorithms implements AlgorithmConstraints
+    {
+        private final Set<String> disabled;
+
+        private DisabledAlgorithms(
+            String... disabled)
+        {
+            this.disabled = new HashSet<>(asList(disabled));
+        }
+
+        @Override
+        public boolean permits(
+            Set<CryptoPrimitive> primitives,
+            String algorithm,
+            AlgorithmParameters parameters)
+        {
+            return !disabled.contains(algorithm);
+        }
+
+        @Override
+        public boolean permits(
+            Set<CryptoPrimitive> primitives,
+            Key key)
+        {
+            return true;
+        }
+
+        @Override
+        public boolean permits(
+            Set<CryptoPrimitive> primitives,
+            String algorithm,
+            Key key,
+            AlgorithmParameters parameters)
+        {
+            return !disabled.contains(algorithm);
+        }
+    }
+
+    private static final class TrustAllManager extends X509ExtendedTrustManager
+    {
+        @Override
+        public void checkClientTrusted(
+            X509Certificate[] chain,
+            String authType)
+        {
+        }
+
+        @Override
+        public void checkClientTrusted(
+            X509Certificate[] chain,
+            String authType,
+            Socket socket)
+        {
+        }
+
+        @Override
+        public void checkClientTrusted(
+            X509Certificate[] chain,
+            String authType,
+            SSLEngine engine)
+        {
+        }
+
+        @Override
+        public void checkServerTrusted(
+            X509Certificate[] chain,
+            String authType)
+        {
+        }
+
+        @Override
+        public void checkServerTrusted(
+            X509Certificate[] chain,
+            String authType,
+            Socket socket)
+        {
+        }
+
+        @Override
+        public void checkServerTrusted(
+            X509Certificate[] chain,
+            String authType,
+            SSLEngine engine)
+        {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    }
+
+    private TlsHandshakes()
+    {
+        // utility class
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+// generates key stores with the JDK keytool, democa certificates have expired
+final class TlsKeyStores
+{
+    static final String PASSWORD = "generated";
+
+    static void generateKeyPair(
+        Path keyStore,
+        String alias,
+        String keyAlgorithm,
+        String hostname,
+        String... options) throws Exception
+    {
+        final List<String> args = new ArrayList<>(asList("-genkeypair", "-alias", alias, "-dname", "CN=" + hostname));
+        args.addAll(keyAlgorithm(keyAlgorithm));
+        args.addAll(asList(options));
+        keytool(keyStore, args);
+    }
+
+    static void generateCertificateAuthority(
+        Path keyStore,
+        String alias) throws Exception
+    {
+        generateKeyPair(keyStore, alias, "EC", alias, "-ext", "bc:c", "-validity", "3650");
+    }
+
+    static void signKeyPair(
+        Path keyStore,
+        String alias,
+        String issuerAlias,
+        String hostname) throws Exception
+    {
+        final Path request = keyStore.resolveSibling(alias + ".csr");
+        final Path certificate = keyStore.resolveSibling(alias + ".cer");
+
+        keytool(keyStore, asList("-certreq", "-alias", alias, "-file", request.toString()));
+        keytool(keyStore, asList("-gencert", "-alias", issuerAlias, "-infile", request.toString(),
+                "-outfile", certificate.toString(), "-ext", "san=dns:" + hostname));
+        keytool(keyStore, asList("-importcert", "-alias", alias, "-file", certificate.toString()));
+    }
+
+    static KeyStore load(
+        Path keyStore) throws Exception
+    {
+        final KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream input = Files.newInputStream(keyStore))
+        {
+            store.load(input, PASSWORD.toCharArray());
+        }
+        return store;
+    }
+
+    static X509Certificate[] chain(
+        KeyStore keyStore,
+        String alias) throws Exception
+    {
+        return asList(keyStore.getCertificateChain(alias)).toArray(new X509Certificate[0]);
+    }
+
+    static byte[] sha256(
+        X509Certificate certificate) throws Exception
+    {
+        return MessageDigest.getInstance("SHA-256").digest(certificate.getPublicKey().getEncoded());
+    }
+
+    private static List<String> keyAlgorithm(
+        String keyAlgorithm)
+    {
+        switch (keyAlgorithm)
+        {
+        case "EC":
+            return asList("-keyalg", "EC", "-groupname", "secp256r1");
+        case "EC384":
+            return asList("-keyalg", "EC", "-groupname", "secp384r1");
+        default:
+            return asList("-keyalg", keyAlgorithm, "-keysize", "2048");
+        }
+    }
+
+    private static void keytool(
+        Path keyStore,
+        List<String> args) throws Exception
+    {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString());
+        command.addAll(args);
+        command.addAll(asList("-keystore", keyStore.toString(), "-storetype", "PKCS12",
+                "-storepass", PASSWORD, "-keypass", PASSWORD, "-noprompt"));
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final String output = new String(process.getInputStream().readAllBytes(), UTF_8);
+        if (process.waitFor() != 0)
+        {
+            throw new IllegalStateException(String.join(" ", command) + "\n" + output);
+        }
+    }
+
+    private TlsKeyStores()
+    {
+        // utility class
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TlsNamedGroupsTest
+{
+    @Test
+    public void shouldReportOfferedNamedGroups()
+    {
+        final List<String> offered = TlsNamedGroups.offered();
+
+        assertThat(offered, hasItem("secp256r1"));
+        assertThat(offered, everyItem(not(startsWith("0x"))));
+    }
+
+    @Test
+    public void shouldTreatUnknownOfferedGroupsAsInEffect()
+    {
+        assertTrue(TlsNamedGroups.inEffect(asList("x25519", "secp256r1"), emptyList()));
+    }
+
+    @Test
+    public void shouldTreatOfferedGroupsInConfiguredOrderAsInEffect()
+    {
+        assertTrue(TlsNamedGroups.inEffect(asList("x25519", "secp256r1"), asList("x25519", "secp256r1")));
+    }
+
+    @Test
+    public void shouldNotTreatDifferentOfferedGroupsAsInEffect()
+    {
+        assertFalse(TlsNamedGroups.inEffect(asList("x25519", "secp256r1"), asList("secp256r1", "x25519")));
+    }
+
+    @Test
+    public void shouldParseNamedGroupsInConfiguredOrder()
+    {
+        assertThat(TlsNamedGroups.parse(" x25519, secp256r1,,x25519 "), arrayContaining("x25519", "secp256r1"));
+    }
+
+    @Test
+    public void shouldParseBlankNamedGroupsAsDefaults()
+    {
+        assertThat(TlsNamedGroups.parse(" "), nullValue());
+    }
+}
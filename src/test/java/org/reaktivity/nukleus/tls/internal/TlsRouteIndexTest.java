@@ -0,0 +1,192 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.tls.internal.TlsRouteIndex.TlsRouteInfo;
+import org.reaktivity.nukleus.tls.internal.types.OctetsFW;
+import org.reaktivity.nukleus.tls.internal.types.String16FW;
+import org.reaktivity.nukleus.tls.internal.types.StringFW;
+
+public class TlsRouteIndexTest
+{
+    private static final long STREAM_ROUTE_ID = 0x0002_0001_0000_0000L;
+    private static final long OTHER_STREAM_ROUTE_ID = 0x0002_0003_0000_0000L;
+
+    private final TlsRouteIndex routeIndex = new TlsRouteIndex();
+
+    @Test
+    public void shouldResolveExactHostname()
+    {
+        routeIndex.add(routeId(1), 0L, null, "example.net", null);
+        routeIndex.add(routeId(2), 0L, null, "example.com", null);
+
+        assertThat(resolve("example.com", null).routeId, equalTo(routeId(2)));
+        assertThat(routeIndex.resolve(STREAM_ROUTE_ID, 0L, "example.com", null).routeId, equalTo(routeId(2)));
+    }
+
+    @Test
+    public void shouldResolveWildcardHostnameOneLabelDeep()
+    {
+        routeIndex.add(routeId(1), 0L, null, "*.example.com", null);
+
+        assertThat(resolve("a.example.com", null).routeId, equalTo(routeId(1)));
+        assertThat(resolve("example.com", null), nullValue());
+        assertThat(resolve("a.b.example.com", null), nullValue());
+        assertThat(routeIndex.resolve(STREAM_ROUTE_ID, 0L, "a.example.com", null).routeId, equalTo(routeId(1)));
+    }
+
+    @Test
+    public void shouldResolveFirstMatchInRouteOrder()
+    {
+        routeIndex.add(routeId(1), 0L, null, "*.example.com", null);
+        routeIndex.add(routeId(2), 0L, null, "a.example.com", null);
+        routeIndex.add(routeId(3), 0L, null, null, null);
+        routeIndex.add(routeId(4), 0L, null, "b.example.com", null);
+
+        assertThat(resolve("a.example.com", null).routeId, equalTo(routeId(1)));
+        assertThat(resolve("b.example.com", null).routeId, equalTo(routeId(1)));
+        assertThat(resolve("example.net", null).routeId, equalTo(routeId(3)));
+        assertThat(resolve(null, null).routeId, equalTo(routeId(3)));
+    }
+
+    @Test
+    public void shouldResolveDefaultBeforeLaterHostname()
+    {
+        routeIndex.add(routeId(1), 0L, null, null, null);
+        routeIndex.add(routeId(2), 0L, null, "example.com", null);
+
+        assertThat(resolve("example.com", null).routeId, equalTo(routeId(1)));
+
+        routeIndex.remove(routeId(1));
+
+        assertThat(resolve("example.com", null).routeId, equalTo(routeId(2)));
+    }
+
+    @Test
+    public void shouldResolveByOfferedProtocols()
+    {
+        routeIndex.add(routeId(1), 0L, null, "example.com", "h2");
+        routeIndex.add(routeId(2), 0L, null, "example.com", null);
+
+        assertThat(resolve("example.com", protocols("http/1.1", "h2")).routeId, equalTo(routeId(1)));
+        assertThat(resolve("example.com", protocols("http/1.1")).routeId, equalTo(routeId(2)));
+        assertThat(resolve("example.com", protocols("h2c")).routeId, equalTo(routeId(2)));
+        assertThat(resolve("example.com", null).routeId, equalTo(routeId(1)));
+    }
+
+    @Test
+    public void shouldResolveByNegotiatedProtocol()
+    {
+        routeIndex.add(routeId(1), 0L, null, "example.com", "h2");
+        routeIndex.add(routeId(2), 0L, null, "example.com", null);
+
+        assertThat(routeIndex.resolve(STREAM_ROUTE_ID, 0L, "example.com", "h2").routeId, equalTo(routeId(1)));
+        assertThat(routeIndex.resolve(STREAM_ROUTE_ID, 0L, "example.com", null).routeId, equalTo(routeId(2)));
+    }
+
+    @Test
+    public void shouldResolveNonAsciiHostname()
+    {
+        for (int id = 1; id <= 16; id++)
+        {
+            routeIndex.add(routeId(id), 0L, null, "b\u00fccher" + id + ".example", null);
+        }
+
+        for (int id = 1; id <= 16; id++)
+        {
+            final String hostname = "b\u00fccher" + id + ".example";
+            assertThat(routeIndex.resolve(STREAM_ROUTE_ID, 0L, hostname, null).routeId, equalTo(routeId(id)));
+            assertThat(resolve(hostname, null).routeId, equalTo(routeId(id)));
+        }
+    }
+
+    @Test
+    public void shouldResolveByAuthorizationAndLocalAddress()
+    {
+        routeIndex.add(routeId(1), 0x0100_0000_0000_0001L, null, null, null);
+        routeIndex.add(routeId(2), 0L, null, null, null);
+
+        assertThat(routeIndex.resolve(STREAM_ROUTE_ID, 0x0100_0000_0000_0001L, (StringFW) null, null).routeId,
+                equalTo(routeId(1)));
+        assertThat(routeIndex.resolve(STREAM_ROUTE_ID, 0x0100_0000_0000_0002L, (StringFW) null, null).routeId,
+                equalTo(routeId(2)));
+        assertThat(routeIndex.resolve(OTHER_STREAM_ROUTE_ID, 0L, (StringFW) null, null), nullValue());
+    }
+
+    @Test
+    public void shouldResolveInRouteOrderAfterRemovingAndResizing()
+    {
+        routeIndex.add(routeId(1), 0L, null, "example.com", null);
+        routeIndex.add(routeId(2), 0L, null, null, null);
+        for (int id = 3; id <= 100; id++)
+        {
+            routeIndex.add(routeId(id), 0L, null, "host" + id + ".example.com", null);
+        }
+        routeIndex.add(routeId(101), 0L, null, "example.com", null);
+
+        routeIndex.remove(routeId(1));
+        routeIndex.remove(routeId(50));
+
+        assertThat(resolve("host49.example.com", null).routeId, equalTo(routeId(2)));
+        assertThat(resolve("host50.example.com", null).routeId, equalTo(routeId(2)));
+        assertThat(resolve("example.com", null).routeId, equalTo(routeId(2)));
+
+        routeIndex.remove(routeId(2));
+
+        assertThat(resolve("host49.example.com", null).routeId, equalTo(routeId(49)));
+        assertThat(resolve("host50.example.com", null), nullValue());
+        assertThat(resolve("example.com", null).routeId, equalTo(routeId(101)));
+    }
+
+    private TlsRouteInfo resolve(
+        String hostname,
+        OctetsFW protocols)
+    {
+        final StringFW serverName = hostname != null ? new String16FW(hostname) : null;
+        return routeIndex.resolve(STREAM_ROUTE_ID, 0L, serverName, protocols);
+    }
+
+    private static OctetsFW protocols(
+        String... names)
+    {
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        for (String name : names)
+        {
+            final byte[] bytes = name.getBytes(UTF_8);
+            encoded.write(bytes.length);
+            encoded.write(bytes, 0, bytes.length);
+        }
+
+        final byte[] bytes = encoded.toByteArray();
+        return new OctetsFW().wrap(new UnsafeBuffer(bytes), 0, bytes.length);
+    }
+
+    // route local address matches stream remote address
+    private static long routeId(
+        int id)
+    {
+        return 0x0001_0002_0000_0000L | id;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.handshake;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.newClientEngine;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.newKeyManager;
+import static org.reaktivity.nukleus.tls.internal.TlsHandshakes.newServerEngine;
+import static org.reaktivity.nukleus.tls.internal.TlsKeyStores.generateKeyPair;
+
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TlsSniKeyManagerTest
+{
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    private static KeyStore keyStore;
+
+    @BeforeClass
+    public static void generateKeyStore() throws Exception
+    {
+        final Path keys = FOLDER.getRoot().toPath().resolve("keys");
+        generateKeyPair(keys, "rsa", "RSA", "rsa.example.com", "-ext", "san=dns:rsa.example.com");
+        generateKeyPair(keys, "ec", "EC", "ec.example.com", "-ext", "san=dns:ec.example.com");
+        generateKeyPair(keys, "wildcard", "RSA", "wildcard.com", "-ext", "san=dns:*.wildcard.com");
+        generateKeyPair(keys, "cn", "RSA", "cn.example.com");
+        generateKeyPair(keys, "expired", "RSA", "expired.rotated.com", "-ext", "san=dns:rotated.com",
+                "-startdate", "-2d", "-validity", "1");
+        generateKeyPair(keys, "rotated", "RSA", "rotated.com", "-ext", "san=dns:rotated.com");
+        keyStore = TlsKeyStores.load(keys);
+    }
+
+    @Test
+    public void shouldChooseAliasByServerName() throws Exception
+    {
+        assertThat(serve("ec.example.com", "TLSv1.3").getSubjectX500Principal().getName(), equalTo("CN=ec.example.com"));
+        assertThat(serve("rsa.example.com", "TLSv1.2").getSubjectX500Principal().getName(), equalTo("CN=rsa.example.com"));
+    }
+
+    @Test
+    public void shouldNotChooseOtherHostnameForMissingKeyType() throws Exception
+    {
+        // TLS 1.3 asks for an EC alias first
+        final X509Certificate certificate = serve("rsa.example.com", "TLSv1.3");
+
+        assertThat(certificate.getSubjectX500Principal().getName(), equalTo("CN=rsa.example.com"));
+        assertThat(certificate.getPublicKey().getAlgorithm(), equalTo("RSA"));
+    }
+
+    @Test
+    public void shouldChooseAliasByWildcardServerName() throws Exception
+    {
+        assertThat(serve("a.wildcard.com", "TLSv1.3").getSubjectX500Principal().getName(), equalTo("CN=wildcard.com"));
+    }
+
+    @Test
+    public void shouldChooseAliasByCommonNameWithoutSubjectAltNames() throws Exception
+    {
+        assertThat(serve("cn.example.com", "TLSv1.3").getSubjectX500Principal().getName(), equalTo("CN=cn.example.com"));
+    }
+
+    @Test
+    public void shouldPreferValidCertificateDuringRotation() throws Exception
+    {
+        assertThat(serve("rotated.com", "TLSv1.3").getSubjectX500Principal().getName(), equalTo("CN=rotated.com"));
+    }
+
+    @Test
+    public void shouldDelegateUnknownServerName() throws Exception
+    {
+        assertThat(serve("unknown.com", "TLSv1.3"), notNullValue());
+    }
+
+    private static X509Certificate serve(
+        String hostname,
+        String protocol) throws Exception
+    {
+        final TlsSniKeyManager keyManager = new TlsSniKeyManager(newKeyManager(keyStore), keyStore,
+                TlsKeyStores.PASSWORD.toCharArray());
+
+        return handshake(newClientEngine(hostname, protocol), newServerEngine(keyManager));
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.Test;
+
+public class TlsStoreInfoTest
+{
+    private static final String CA_DNAME = "CN=ca";
+
+    private final TlsAuthorizationEncoding encoding = new TlsAuthorizationEncoding(8, 1);
+    private final TlsStoreInfo storeInfo = new TlsStoreInfo("store", 1,
+            new TlsStoreContext(null, true, singleton(CA_DNAME), null, null, null), 0, null, null, encoding);
+
+    @Test
+    public void shouldAuthorizeKnownIssuer()
+    {
+        assertThat(storeInfo.authorization(new X500Principal(CA_DNAME)), equalTo(encoding.encode(1, 0L)));
+        assertThat(storeInfo.authorization(new X500Principal(CA_DNAME)), equalTo(encoding.encode(1, 0L)));
+    }
+
+    @Test
+    public void shouldNotAuthorizeUnknownIssuer()
+    {
+        assertThat(storeInfo.authorization(new X500Principal("CN=unknown")), equalTo(0L));
+    }
+
+    @Test
+    public void shouldNotServeCachedAuthorizationAfterUnresolve()
+    {
+        final long authorization = storeInfo.authorization(new X500Principal(CA_DNAME));
+
+        assertTrue(storeInfo.unresolve(authorization));
+
+        final long reauthorization = storeInfo.authorization(new X500Principal(CA_DNAME));
+        assertThat(reauthorization, not(equalTo(authorization)));
+        assertThat(reauthorization, equalTo(encoding.encode(1, 1L)));
+    }
+
+    @Test
+    public void shouldNotPollServerEngineFromContextBeforeReload() throws Exception
+    {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final Set<SSLEngine> reloadedEngines = new HashSet<>();
+        final TlsStoreContext reloaded = newStoreContext(reloadedEngines::add);
+        final AtomicReference<TlsStoreInfo> pooled = new AtomicReference<>();
+
+        // reload completes while the refill is building an engine from the initial context
+        final TlsStoreContext initial = newStoreContext(e -> pooled.get().reload(reloaded));
+        pooled.set(new TlsStoreInfo("store", 1, initial, 1, tasks::add, null, encoding));
+        tasks.poll().run();
+
+        assertThat(pooled.get().pollServerEngine(), nullValue());
+
+        tasks.poll().run();
+
+        assertTrue(reloadedEngines.contains(pooled.get().pollServerEngine()));
+    }
+
+    @Test
+    public void shouldNotRefillServerEnginesAfterExecutorShutdown() throws Exception
+    {
+        final Executor shutdown = r ->
+        {
+            throw new RejectedExecutionException();
+        };
+
+        final TlsStoreInfo closed = new TlsStoreInfo("store", 1, newStoreContext(e -> {}), 1, shutdown, null, encoding);
+
+        assertThat(closed.pollServerEngine(), nullValue());
+        assertThat(closed.newServerEngine(), not(nullValue()));
+    }
+
+    @Test
+    public void shouldNotShareClientPeerPortAcrossNetworkRoutes() throws Exception
+    {
+        final TlsStoreInfo client = new TlsStoreInfo("store", 1, newStoreContext(e -> {}), 0, null, null, encoding);
+        final long networkRouteId = 0x0000_0001_0000_0000L;
+        final long collidingRouteId = 0x0000_0000_0000_0001L;
+        assertThat(Long.hashCode(networkRouteId), equalTo(Long.hashCode(collidingRouteId)));
+
+        final int peerPort = client.newClientEngine("example.com", networkRouteId).getPeerPort();
+
+        assertThat(client.newClientEngine("example.com", networkRouteId).getPeerPort(), equalTo(peerPort));
+        assertThat(client.newClientEngine("example.com", collidingRouteId).getPeerPort(), not(equalTo(peerPort)));
+    }
+
+    @Test
+    public void shouldReuseClientPeerPortOfUnroutedNetworkRoute() throws Exception
+    {
+        final TlsStoreInfo client = new TlsStoreInfo("store", 1, newStoreContext(e -> {}), 0, null, null, encoding);
+
+        final int peerPort = client.clientPeerPort(1L);
+        client.releaseClientPeerPort(1L);
+
+        assertThat(client.clientPeerPort(2L), equalTo(peerPort));
+        assertThat(client.clientPeerPort(1L), not(equalTo(peerPort)));
+    }
+
+    @Test
+    public void shouldBoundClientPeerPorts() throws Exception
+    {
+        final TlsStoreInfo client = new TlsStoreInfo("store", 1, newStoreContext(e -> {}), 0, null, null, encoding);
+
+        for (long networkRouteId = 1L; networkRouteId <= 65535L; networkRouteId++)
+        {
+            assertThat(client.clientPeerPort(networkRouteId), equalTo((int) networkRouteId));
+        }
+
+        assertThat(client.clientPeerPort(65536L), equalTo(0));
+
+        client.releaseClientPeerPort(65536L);
+        client.releaseClientPeerPort(7L);
+
+        assertThat(client.clientPeerPort(65537L), equalTo(7));
+        assertThat(client.clientPeerPort(65538L), equalTo(0));
+    }
+
+    @Test
+    public void shouldReloadWhileMaterializing() throws Exception
+    {
+        final TlsStoreInfo lazy = new TlsStoreInfo("store", 1, null, 0, null, null, encoding);
+        final TlsStoreContext reloaded = new TlsStoreContext(null, false, emptySet(), null, null, null);
+
+        final boolean materialized = lazy.materializeIfNecessary(store ->
+        {
+            final Thread reload = new Thread(() -> lazy.reload(reloaded));
+            reload.start();
+            try
+            {
+                reload.join(10000L);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            assertFalse(reload.isAlive());
+            return new TlsStoreContext(null, false, emptySet(), null, null, null);
+        });
+
+        assertTrue(materialized);
+        assertThat(lazy.materializeIfNecessary(store -> null), equalTo(false));
+    }
+
+    private static TlsStoreContext newStoreContext(
+        Consumer<SSLEngine> onEngine) throws Exception
+    {
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, null, null);
+
+        final SSLContextSpi spi = new SSLContextSpi()
+        {
+            @Override
+            protected void engineInit(
+                KeyManager[] keyManagers,
+                TrustManager[] trustManagers,
+                SecureRandom random)
+            {
+            }
+
+            @Override
+            protected SSLSocketFactory engineGetSocketFactory()
+            {
+                return context.getSocketFactory();
+            }
+
+            @Override
+            protected SSLServerSocketFactory engineGetServerSocketFactory()
+            {
+                return context.getServerSocketFactory();
+            }
+
+            @Override
+            protected SSLEngine engineCreateSSLEngine()
+            {
+                final SSLEngine engine = context.createSSLEngine();
+                onEngine.accept(engine);
+                return engine;
+            }
+
+            @Override
+            protected SSLEngine engineCreateSSLEngine(
+                String host,
+                int port)
+            {
+                final SSLEngine engine = context.createSSLEngine(host, port);
+                onEngine.accept(engine);
+                return engine;
+            }
+
+            @Override
+            protected SSLSessionContext engineGetServerSessionContext()
+            {
+                return context.getServerSessionContext();
+            }
+
+            @Override
+            protected SSLSessionContext engineGetClientSessionContext()
+            {
+                return context.getClientSessionContext();
+            }
+        };
+
+        final SSLContext hooked = new SSLContext(spi, context.getProvider(), "TLS")
+        {
+        };
+
+        return new TlsStoreContext(hooked, false, emptySet(), null, null, null);
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.net.ssl.SSLContext;
+
+import org.agrona.LangUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TlsStoreLoaderTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldCancelPreloadsOnClose() throws Exception
+    {
+        final Path directory = folder.getRoot().toPath();
+        folder.newFolder("tls", "stores", "store1");
+        folder.newFolder("tls", "stores", "store2");
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, SECONDS, new LinkedBlockingQueue<>(),
+            r -> new Thread(r, "tls-store-load-test"));
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> awaitQuietly(started, blocked), executor, 0);
+
+        loader.preload(directory, 60000L);
+        assertTrue(started.await(10, SECONDS));
+
+        loader.close();
+
+        assertTrue(loader.claim("store1").isCancelled());
+        assertTrue(loader.claim("store2").isCancelled());
+        assertTrue(executor.awaitTermination(10, SECONDS));
+        assertThat(loaderThreads(), empty());
+    }
+
+    @Test
+    public void shouldClaimPreloadWithinRetainPeriod() throws Exception
+    {
+        final Path directory = folder.getRoot().toPath();
+        folder.newFolder("tls", "stores", "store1");
+
+        final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> countLoad(loads, s), newExecutor(), 0);
+
+        loader.preload(directory, 60000L);
+
+        assertThat(loader.claim("store1").join(), notNullValue());
+        assertThat(loads.get("store1").get(), equalTo(1));
+
+        loader.close();
+    }
+
+    @Test
+    public void shouldReleaseUnclaimedPreloads() throws Exception
+    {
+        final Path directory = folder.getRoot().toPath();
+        folder.newFolder("tls", "stores", "store1");
+
+        final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> countLoad(loads, s), newExecutor(), 0);
+
+        loader.preload(directory, 0L);
+
+        final long deadline = System.nanoTime() + SECONDS.toNanos(10);
+        while (loader.preloaded("store1") && System.nanoTime() - deadline < 0L)
+        {
+            Thread.sleep(10L);
+        }
+
+        assertFalse(loader.preloaded("store1"));
+        assertThat(loader.claim("store1").join(), notNullValue());
+        assertThat(loads.get("store1").get(), equalTo(2));
+
+        loader.close();
+    }
+
+    @Test
+    public void shouldPublishRoutedStoreOnLoad() throws Exception
+    {
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> newStoreContext(), null, 0);
+        final TlsStoreInfo routed = newLazyStoreInfo("routed", loader);
+        final CompletableFuture<TlsStoreContext> load = new CompletableFuture<>();
+
+        routed.pin();
+        routed.complete(load);
+
+        assertTrue(routed.loading());
+        assertThat(routed.context(), nullValue());
+
+        load.complete(newStoreContext());
+
+        assertFalse(routed.loading());
+        assertThat(routed.context(), notNullValue());
+    }
+
+    @Test
+    public void shouldAwaitRoutedStoreLoadInLoadTask() throws Exception
+    {
+        final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> countLoad(loads, s), null, 0);
+        final TlsStoreInfo routed = newLazyStoreInfo("routed", loader);
+
+        routed.pin();
+        routed.complete(supplyAsync(TlsStoreLoaderTest::newStoreContext));
+        routed.load();
+
+        assertThat(routed.context(), notNullValue());
+        assertThat(loads.get("routed"), nullValue());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyAccessedLazyStore() throws Exception
+    {
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> newStoreContext(), null, 2);
+        final TlsStoreInfo store1 = newLazyStoreInfo("store1", loader);
+        final TlsStoreInfo store2 = newLazyStoreInfo("store2", loader);
+        final TlsStoreInfo store3 = newLazyStoreInfo("store3", loader);
+
+        store1.load();
+        store1.touch();
+        store2.load();
+        store2.touch();
+        store1.touch();
+        store3.load();
+
+        assertThat(store1.context(), notNullValue());
+        assertThat(store2.context(), nullValue());
+        assertThat(store3.context(), notNullValue());
+
+        store2.load();
+
+        assertThat(store2.context(), notNullValue());
+        assertThat(store3.context(), nullValue());
+    }
+
+    @Test
+    public void shouldNotEvictPinnedStore() throws Exception
+    {
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> newStoreContext(), null, 1);
+        final TlsStoreInfo pinned = newLazyStoreInfo("pinned", loader);
+        final TlsStoreInfo lazy = newLazyStoreInfo("lazy", loader);
+
+        pinned.pin();
+        pinned.load();
+        lazy.load();
+
+        assertThat(pinned.context(), notNullValue());
+        assertThat(lazy.context(), notNullValue());
+    }
+
+    @Test
+    public void shouldReportEvictionsOnceBound() throws Exception
+    {
+        final TlsStoreLoader loader = new TlsStoreLoader(s -> newStoreContext(), null, 1);
+        newLazyStoreInfo("store1", loader).load();
+        newLazyStoreInfo("store2", loader).load();
+
+        final Map<String, AtomicLong> accumulators = new HashMap<>();
+        loader.bind(new TlsCounters(name -> () -> 0L,
+            name -> accumulators.computeIfAbsent(name, n -> new AtomicLong())::addAndGet));
+
+        assertThat(accumulators.get("tls.store.loads").get(), equalTo(2L));
+        assertThat(accumulators.get("tls.store.evictions").get(), equalTo(1L));
+
+        newLazyStoreInfo("store3", loader).load();
+
+        assertThat(accumulators.get("tls.store.loads").get(), equalTo(3L));
+        assertThat(accumulators.get("tls.store.evictions").get(), equalTo(2L));
+    }
+
+    private static TlsStoreInfo newLazyStoreInfo(
+        String store,
+        TlsStoreLoader loader)
+    {
+        return new TlsStoreInfo(store, 1, null, 0, null, loader, new TlsAuthorizationEncoding(8, 1));
+    }
+
+    private static TlsStoreContext newStoreContext()
+    {
+        TlsStoreContext storeContext = null;
+
+        try
+        {
+            storeContext = new TlsStoreContext(SSLContext.getInstance("TLS"), false, emptySet(), null, null, null);
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            LangUtil.rethrowUnchecked(ex);
+        }
+
+        return storeContext;
+    }
+
+    private static ThreadPoolExecutor newExecutor()
+    {
+        return new ThreadPoolExecutor(1, 1, 0L, SECONDS, new LinkedBlockingQueue<>(),
+            r -> new Thread(r, "tls-store-load-test"));
+    }
+
+    private static TlsStoreContext countLoad(
+        Map<String, AtomicInteger> loads,
+        String store)
+    {
+        loads.computeIfAbsent(String.valueOf(store), s -> new AtomicInteger()).incrementAndGet();
+        return newStoreContext();
+    }
+
+    private static TlsStoreContext awaitQuietly(
+        CountDownLatch started,
+        CountDownLatch blocked)
+    {
+        started.countDown();
+        try
+        {
+            blocked.await();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static Set<Thread> loaderThreads() throws InterruptedException
+    {
+        final Set<Thread> threads = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("tls-store-load-test"))
+                .collect(Collectors.toSet());
+        for (Thread thread : threads)
+        {
+            thread.join(10000L);
+        }
+        return threads.stream().filter(Thread::isAlive).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.reaktivity.nukleus.tls.internal.TlsStoreRegistry.NO_STORE_INDEX;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TlsStoreRegistryTest
+{
+    private static final int INDEX_CAPACITY = 6;
+
+    private final TlsAuthorizationEncoding encoding = new TlsAuthorizationEncoding(8, 1);
+    private final TlsStoreRegistry registry = new TlsStoreRegistry(INDEX_CAPACITY);
+
+    @Test
+    public void shouldAssignIndexForMinimumHashCode()
+    {
+        assertThat("polygenelubricants".hashCode(), equalTo(Integer.MIN_VALUE));
+
+        final int storeIndex = registry.nextIndex("polygenelubricants");
+
+        assertThat(storeIndex, greaterThan(NO_STORE_INDEX));
+        assertThat(storeIndex, lessThan(INDEX_CAPACITY));
+    }
+
+    @Test
+    public void shouldAssignEveryIndexBeforeExhausted()
+    {
+        final Set<Integer> storeIndexes = new HashSet<>();
+        for (int i = 1; i < INDEX_CAPACITY; i++)
+        {
+            final TlsStoreInfo storeInfo = add("store" + i);
+            assertThat(storeInfo.storeIndex, not(equalTo(NO_STORE_INDEX)));
+            storeIndexes.add(storeInfo.storeIndex);
+        }
+
+        assertThat(storeIndexes.size(), equalTo(INDEX_CAPACITY - 1));
+        assertThat(registry.nextIndex("exhausted"), equalTo(NO_STORE_INDEX));
+    }
+
+    @Test
+    public void shouldReuseIndexAfterRemove()
+    {
+        final TlsStoreInfo storeInfo = add("store");
+        registry.remove(storeInfo);
+
+        assertThat(registry.findByIndex(storeInfo.storeIndex), nullValue());
+        assertThat(registry.find("store"), nullValue());
+        assertThat(registry.nextIndex("store"), equalTo(storeInfo.storeIndex));
+    }
+
+    @Test
+    public void shouldFindDefaultAndNamedStores()
+    {
+        final TlsStoreInfo defaultStore = add(null);
+        final TlsStoreInfo namedStore = add("store");
+
+        assertThat(registry.find(null), sameInstance(defaultStore));
+        assertThat(registry.find("store"), sameInstance(namedStore));
+        assertThat(registry.findByIndex(namedStore.storeIndex), sameInstance(namedStore));
+    }
+
+    private TlsStoreInfo add(
+        String store)
+    {
+        final TlsStoreInfo storeInfo = new TlsStoreInfo(store, registry.nextIndex(store), null, 0, null, null, encoding);
+        registry.add(storeInfo);
+        return storeInfo;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal;
+
+import static java.util.Collections.emptySet;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.net.ssl.SSLContext;
+
+import org.agrona.LangUtil;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TlsStoreWatcherTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final TlsAuthorizationEncoding encoding = new TlsAuthorizationEncoding(8, 1);
+    private final BlockingQueue<TlsStoreContext> loaded = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> failed = new LinkedBlockingQueue<>();
+    private final TlsStoreWatcher watcher = new TlsStoreWatcher(this::load, 10L, () -> failed.add("failed"));
+
+    @After
+    public void close()
+    {
+        watcher.close();
+    }
+
+    @Test
+    public void shouldReloadChangedStore() throws Exception
+    {
+        final Path directory = folder.newFolder("store").toPath();
+        final TlsStoreInfo storeInfo = new TlsStoreInfo("store", 1, newStoreContext(), 0, null, null, encoding);
+        watcher.watch(storeInfo, directory);
+
+        Files.write(directory.resolve("keys"), new byte[] { 1 });
+
+        final TlsStoreContext reloaded = loaded.poll(10, TimeUnit.SECONDS);
+        assertTrue(reloaded != null);
+        assertThat(waitForContext(storeInfo, reloaded.context), sameInstance(reloaded.context));
+    }
+
+    @Test
+    public void shouldReportFailedReload() throws Exception
+    {
+        final Path directory = folder.newFolder("failing").toPath();
+        final TlsStoreContext storeContext = newStoreContext();
+        final TlsStoreInfo storeInfo = new TlsStoreInfo("failing", 1, storeContext, 0, null, null, encoding);
+        watcher.watch(storeInfo, directory);
+
+        Files.write(directory.resolve("keys"), new byte[] { 1 });
+
+        assertTrue(failed.poll(10, TimeUnit.SECONDS) != null);
+        assertThat(storeInfo.context(), sameInstance(storeContext.context));
+    }
+
+    @Test
+    public void shouldStopWatcherThreadOnClose() throws Exception
+    {
+        watcher.close();
+
+        for (Thread thread : watcherThreads())
+        {
+            thread.join(10000L);
+        }
+        assertThat(watcherThreads(), empty());
+    }
+
+    private TlsStoreContext load(
+        String store)
+    {
+        if ("failing".equals(store))
+        {
+            throw new IllegalStateException("partially written");
+        }
+
+        final TlsStoreContext storeContext = newStoreContext();
+        loaded.add(storeContext);
+        return storeContext;
+    }
+
+    private static SSLContext waitForContext(
+        TlsStoreInfo storeInfo,
+        SSLContext expected) throws InterruptedException
+    {
+        // reload publishes the context after the load completes
+        for (int i = 0; i < 1000 && storeInfo.context() != expected; i++)
+        {
+            Thread.sleep(10L);
+        }
+        return storeInfo.context();
+    }
+
+    private static TlsStoreContext newStoreContext()
+    {
+        TlsStoreContext storeContext = null;
+
+        try
+        {
+            storeContext = new TlsStoreContext(SSLContext.getInstance("TLS"), false, emptySet(), null, null, null);
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            LangUtil.rethrowUnchecked(ex);
+        }
+
+        return storeContext;
+    }
+
+    private static Set<Thread> watcherThreads()
+    {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("tls-store-watcher") && t.isAlive())
+                .collect(Collectors.toSet());
+    }
+}
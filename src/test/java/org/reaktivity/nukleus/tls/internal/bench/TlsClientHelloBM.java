@@ -0,0 +1,172 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal.bench;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.tls.internal.TlsRouteIndex;
+import org.reaktivity.nukleus.tls.internal.TlsRouteIndex.TlsRouteInfo;
+import org.reaktivity.nukleus.tls.internal.types.OctetsFW;
+import org.reaktivity.nukleus.tls.internal.types.StringFW;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsClientHelloFW;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsExtensionFW;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsExtensionType;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsHandshakeFW;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsNameType;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsRecordInfoFW;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsServerNameExtensionFW;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsServerNameFW;
+import org.reaktivity.nukleus.tls.internal.types.codec.TlsVector16FW;
+
+/**
+ * Measures SNI and ALPN extraction from a ClientHello plus route lookup, decoding the record
+ * as the server stream factory does. Run with {@code -prof gc} to confirm no allocation per ClientHello.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class TlsClientHelloBM
+{
+    private static final int LOCAL_ID = 1;
+
+    @Param({ "1", "1000" })
+    private int routes;
+
+    private final TlsRecordInfoFW tlsRecordInfoRO = new TlsRecordInfoFW();
+    private final TlsHandshakeFW tlsHandshakeRO = new TlsHandshakeFW();
+    private final TlsClientHelloFW tlsClientHelloRO = new TlsClientHelloFW();
+    private final TlsVector16FW tlsVector16RO = new TlsVector16FW();
+    private final TlsExtensionFW tlsExtensionRO = new TlsExtensionFW();
+    private final TlsServerNameExtensionFW tlsServerNameExtensionRO = new TlsServerNameExtensionFW();
+    private final TlsServerNameFW tlsServerNameRO = new TlsServerNameFW();
+    private final TlsVector16FW tlsProtocolNamesRO = new TlsVector16FW();
+
+    private TlsRouteIndex routeIndex;
+    private DirectBuffer clientHello;
+    private long routeId;
+
+    @Setup(Level.Trial)
+    public void init() throws Exception
+    {
+        this.routeIndex = new TlsRouteIndex();
+        for (int index = 0; index < routes; index++)
+        {
+            final String hostname = String.format("tenant%d.example.com", index);
+            routeIndex.add((long) LOCAL_ID << 48 | index, 0L, "server", hostname, "h2");
+        }
+        this.routeId = (long) LOCAL_ID << 32;
+
+        final SSLEngine client = TlsEngines.newClientEngine(TlsEngines.newClientContext());
+        final SSLParameters parameters = client.getSSLParameters();
+        parameters.setServerNames(singletonList(
+                new SNIHostName(String.format("tenant%d.example.com", routes - 1))));
+        parameters.setApplicationProtocols(new String[] { "h2", "http/1.1" });
+        client.setSSLParameters(parameters);
+
+        final ByteBuffer clientHello = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+        client.wrap(ByteBuffer.allocate(0), clientHello);
+        clientHello.flip();
+        this.clientHello = new UnsafeBuffer(clientHello, 0, clientHello.limit());
+    }
+
+    @Benchmark
+    public TlsRouteInfo resolve()
+    {
+        final TlsRecordInfoFW tlsRecordInfo = tlsRecordInfoRO.wrap(clientHello, 0, clientHello.capacity());
+        final TlsHandshakeFW tlsHandshake = tlsHandshakeRO.wrap(clientHello, tlsRecordInfo.limit(), clientHello.capacity());
+        final OctetsFW body = tlsHandshake.body();
+        final TlsClientHelloFW tlsClientHello = tlsClientHelloRO.wrap(body.buffer(), body.offset(), body.limit());
+        final OctetsFW extensions = tlsClientHello.extensions();
+        final TlsVector16FW tlsExtensions = tlsVector16RO.wrap(extensions.buffer(), extensions.offset(), extensions.limit());
+        final OctetsFW tlsExtensionsData = tlsExtensions.data();
+        final DirectBuffer buffer = tlsExtensionsData.buffer();
+        final int maxLimit = tlsExtensionsData.limit();
+
+        StringFW tlsHostname = null;
+        OctetsFW tlsProtocols = null;
+
+        for (int offset = tlsExtensionsData.offset(); offset < maxLimit; )
+        {
+            final TlsExtensionFW tlsExtension = tlsExtensionRO.wrap(buffer, offset, maxLimit);
+            final TlsExtensionType tlsExtensionType = TlsExtensionType.valueOf(tlsExtension.type());
+            if (tlsExtensionType != null)
+            {
+                final OctetsFW data = tlsExtension.data();
+                switch (tlsExtensionType)
+                {
+                case SERVER_NAME:
+                    final TlsServerNameExtensionFW tlsServerNameExtension =
+                            tlsServerNameExtensionRO.wrap(data.buffer(), data.offset(), data.limit());
+                    final OctetsFW tlsServerNames = tlsServerNameExtension.serverNames().data();
+                    final TlsServerNameFW tlsServerName =
+                            tlsServerNameRO.wrap(tlsServerNames.buffer(), tlsServerNames.offset(), tlsServerNames.limit());
+                    if (tlsServerName.kind() == TlsNameType.HOSTNAME.value())
+                    {
+                        tlsHostname = tlsServerName.hostname();
+                    }
+                    break;
+                case APPLICATION_LAYER_PROTOCOL_NEGOTIATION:
+                    tlsProtocols = tlsProtocolNamesRO.wrap(data.buffer(), data.offset(), data.limit()).data();
+                    break;
+                default:
+                    break;
+                }
+            }
+            offset = tlsExtension.limit();
+        }
+
+        return routeIndex.resolve(routeId, 0L, tlsHostname, tlsProtocols);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(TlsClientHelloBM.class.getSimpleName())
+                .addProfiler("gc")
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+
+import javax.net.ssl.SSLEngine;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures application bytes per second on a single core for wrap plus unwrap through heap
+ * or direct engine buffers, copying to and from off-heap slots as the stream factories do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Threads(1)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class TlsEngineBuffersBM
+{
+    @Param({ "heap", "direct" })
+    private String buffers;
+
+    @Param({ "16384" })
+    private int payloadSize;
+
+    private SSLEngine client;
+    private SSLEngine server;
+
+    private MutableDirectBuffer slotBuffer;
+
+    private ByteBuffer inAppByteBuffer;
+    private MutableDirectBuffer inAppBuffer;
+    private ByteBuffer outNetByteBuffer;
+    private MutableDirectBuffer outNetBuffer;
+    private ByteBuffer inNetByteBuffer;
+    private MutableDirectBuffer inNetBuffer;
+    private ByteBuffer outAppByteBuffer;
+    private MutableDirectBuffer outAppBuffer;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes
+    {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            bytes = 0L;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void init() throws Exception
+    {
+        this.client = TlsEngines.newClientEngine(TlsEngines.newClientContext());
+        this.server = TlsEngines.newServerEngine(TlsEngines.newServerContext());
+
+        TlsEngines.handshake(client, server);
+
+        final int capacity = 65536;
+        final IntFunction<ByteBuffer> allocateByteBuffer = "direct".equals(buffers)
+                ? c -> allocateDirectAligned(c, CACHE_LINE_LENGTH)
+                : ByteBuffer::allocate;
+
+        this.slotBuffer = new UnsafeBuffer(allocateDirectAligned(capacity, CACHE_LINE_LENGTH));
+        this.slotBuffer.setMemory(0, payloadSize, (byte) 0x5a);
+
+        this.inAppByteBuffer = allocateByteBuffer.apply(capacity);
+        this.inAppBuffer = new UnsafeBuffer(inAppByteBuffer);
+        this.outNetByteBuffer = allocateByteBuffer.apply(capacity << 1);
+        this.outNetBuffer = new UnsafeBuffer(outNetByteBuffer);
+        this.inNetByteBuffer = allocateByteBuffer.apply(capacity);
+        this.inNetBuffer = new UnsafeBuffer(inNetByteBuffer);
+        this.outAppByteBuffer = allocateByteBuffer.apply(capacity);
+        this.outAppBuffer = new UnsafeBuffer(outAppByteBuffer);
+    }
+
+    @Benchmark
+    public void wrapAndUnwrap(
+        Bytes counters) throws Exception
+    {
+        inAppByteBuffer.clear();
+        inAppBuffer.putBytes(0, slotBuffer, 0, payloadSize);
+        inAppByteBuffer.limit(payloadSize);
+        outNetByteBuffer.clear();
+
+        client.wrap(inAppByteBuffer, outNetByteBuffer);
+
+        final int recordLength = outNetByteBuffer.position();
+        inNetByteBuffer.clear();
+        inNetBuffer.putBytes(0, outNetBuffer, 0, recordLength);
+        inNetByteBuffer.limit(recordLength);
+        outAppByteBuffer.clear();
+
+        final int bytesProduced = server.unwrap(inNetByteBuffer, outAppByteBuffer).bytesProduced();
+        slotBuffer.putBytes(0, outAppBuffer, 0, bytesProduced);
+
+        counters.bytes += bytesProduced;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(TlsEngineBuffersBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
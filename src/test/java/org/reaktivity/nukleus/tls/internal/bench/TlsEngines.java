@@ -0,0 +1,198 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal.bench;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.function.ToIntFunction;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+final class TlsEngines
+{
+    private static final Path STORES = Paths.get("src/test/democa/stores");
+    private static final char[] PASSWORD = "generated".toCharArray();
+
+    static SSLContext newServerContext() throws Exception
+    {
+        final KeyStore keys = loadStore(STORES.resolve("server/keys"));
+        final KeyManagerFactory factory = KeyManagerFactory.getInstance("PKIX");
+        factory.init(keys, PASSWORD);
+
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(factory.getKeyManagers(), null, new SecureRandom());
+        return context;
+    }
+
+    static SSLContext newClientContext() throws Exception
+    {
+        // democa certificates may have expired, benchmarks measure record processing, not validation
+        final TrustManager[] trustManagers = { new TrustAllManager() };
+
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers, new SecureRandom());
+        return context;
+    }
+
+    static SSLEngine newServerEngine(
+        SSLContext context)
+    {
+        final SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    static SSLEngine newClientEngine(
+        SSLContext context)
+    {
+        final SSLEngine engine = context.createSSLEngine("localhost", -1);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    static void handshake(
+        SSLEngine client,
+        SSLEngine server) throws SSLException
+    {
+        handshake(client, server, TlsEngines::runTasks);
+    }
+
+    static int handshake(
+        SSLEngine client,
+        SSLEngine server,
+        ToIntFunction<SSLEngine> runTasks) throws SSLException
+    {
+        final int netCapacity = Math.max(client.getSession().getPacketBufferSize(), server.getSession().getPacketBufferSize());
+        final int appCapacity = Math.max(client.getSession().getApplicationBufferSize(),
+                                         server.getSession().getApplicationBufferSize());
+
+        final ByteBuffer empty = ByteBuffer.allocate(0);
+        final ByteBuffer clientToServer = ByteBuffer.allocate(netCapacity << 2);
+        final ByteBuffer serverToClient = ByteBuffer.allocate(netCapacity << 2);
+        final ByteBuffer app = ByteBuffer.allocate(appCapacity);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        int submissions = 0;
+        while (!isHandshakeComplete(client) || !isHandshakeComplete(server))
+        {
+            submissions += step(client, empty, clientToServer, serverToClient, app, runTasks);
+            submissions += step(server, empty, serverToClient, clientToServer, app, runTasks);
+        }
+
+        return submissions;
+    }
+
+    private static int step(
+        SSLEngine engine,
+        ByteBuffer empty,
+        ByteBuffer outNet,
+        ByteBuffer inNet,
+        ByteBuffer app,
+        ToIntFunction<SSLEngine> runTasks) throws SSLException
+    {
+        int submissions = 0;
+
+        switch (engine.getHandshakeStatus())
+        {
+        case NEED_TASK:
+            submissions = runTasks.applyAsInt(engine);
+            break;
+        case NEED_WRAP:
+            engine.wrap(empty, outNet);
+            break;
+        case NEED_UNWRAP:
+            inNet.flip();
+            app.clear();
+            engine.unwrap(inNet, app);
+            inNet.compact();
+            break;
+        default:
+            break;
+        }
+
+        return submissions;
+    }
+
+    private static int runTasks(
+        SSLEngine engine)
+    {
+        for (Runnable task = engine.getDelegatedTask(); task != null; task = engine.getDelegatedTask())
+        {
+            task.run();
+        }
+        return 1;
+    }
+
+    private static boolean isHandshakeComplete(
+        SSLEngine engine)
+    {
+        final HandshakeStatus status = engine.getHandshakeStatus();
+        return status == HandshakeStatus.NOT_HANDSHAKING || status == HandshakeStatus.FINISHED;
+    }
+
+    private static final class TrustAllManager implements X509TrustManager
+    {
+        @Override
+        public void checkClientTrusted(
+            X509Certificate[] chain,
+            String authType)
+        {
+        }
+
+        @Override
+        public void checkServerTrusted(
+            X509Certificate[] chain,
+            String authType)
+        {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    }
+
+    private static KeyStore loadStore(
+        Path path) throws Exception
+    {
+        final KeyStore store = KeyStore.getInstance("JKS");
+        try (InputStream input = Files.newInputStream(path))
+        {
+            store.load(input, PASSWORD);
+        }
+        return store;
+    }
+
+    private TlsEngines()
+    {
+        // utility class
+    }
+}
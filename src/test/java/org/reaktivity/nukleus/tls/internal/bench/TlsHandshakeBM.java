@@ -0,0 +1,154 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal.bench;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures full handshake latency when delegated tasks are handed to another thread and back,
+ * either one task per submission or draining every available task in one composite submission.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(MICROSECONDS)
+public class TlsHandshakeBM
+{
+    @Param({ "single", "drain" })
+    private String tasks;
+
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+    private ExecutorService executor;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RoundTrips
+    {
+        public long handshakes;
+        public long submissions;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            handshakes = 0L;
+            submissions = 0L;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void init() throws Exception
+    {
+        this.serverContext = TlsEngines.newServerContext();
+        this.clientContext = TlsEngines.newClientContext();
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void handshake(
+        RoundTrips counters) throws Exception
+    {
+        final SSLEngine client = TlsEngines.newClientEngine(clientContext);
+        final SSLEngine server = TlsEngines.newServerEngine(serverContext);
+
+        counters.handshakes++;
+        counters.submissions += "drain".equals(tasks)
+                ? TlsEngines.handshake(client, server, this::drainTasks)
+                : TlsEngines.handshake(client, server, this::singleTask);
+
+        // full handshake every time
+        client.getSession().invalidate();
+    }
+
+    private int singleTask(
+        SSLEngine engine)
+    {
+        return submit(engine.getDelegatedTask());
+    }
+
+    private int drainTasks(
+        SSLEngine engine)
+    {
+        final Runnable task = engine.getDelegatedTask();
+        return submit(() ->
+        {
+            for (Runnable next = task; next != null; next = engine.getDelegatedTask())
+            {
+                next.run();
+            }
+        });
+    }
+
+    private int submit(
+        Runnable task)
+    {
+        try
+        {
+            // models the signal round trip back to the I/O thread
+            executor.submit(task).get();
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+        return 1;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(TlsHandshakeBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
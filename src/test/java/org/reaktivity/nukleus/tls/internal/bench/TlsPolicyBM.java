@@ -0,0 +1,181 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal.bench;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares full handshake latency and bulk wrap plus unwrap throughput per protocol and cipher suite policy,
+ * configured on both engines as TlsStoreInfo does for nukleus.tls.handshake.protocols and cipher.suites.
+ * Named groups are process wide before Java 20, compare them across runs with -jvmArgsAppend -Djdk.tls.namedGroups=...
+ */
+@State(Scope.Thread)
+@Fork(3)
+@Threads(1)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+public class TlsPolicyBM
+{
+    @Param({ "default", "tls13-aes-gcm", "tls13-chacha20", "tls12-aes-gcm", "tls12-chacha20" })
+    private String policy;
+
+    @Param({ "16384" })
+    private int payloadSize;
+
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+    private String[] protocols;
+    private String[] cipherSuites;
+
+    private SSLEngine client;
+    private SSLEngine server;
+
+    private ByteBuffer inApp;
+    private ByteBuffer outNet;
+    private ByteBuffer outApp;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes
+    {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            bytes = 0L;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void init() throws Exception
+    {
+        switch (policy)
+        {
+        case "tls13-aes-gcm":
+            this.protocols = new String[] { "TLSv1.3" };
+            this.cipherSuites = new String[] { "TLS_AES_128_GCM_SHA256" };
+            break;
+        case "tls13-chacha20":
+            this.protocols = new String[] { "TLSv1.3" };
+            this.cipherSuites = new String[] { "TLS_CHACHA20_POLY1305_SHA256" };
+            break;
+        case "tls12-aes-gcm":
+            this.protocols = new String[] { "TLSv1.2" };
+            this.cipherSuites = new String[] { "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256" };
+            break;
+        case "tls12-chacha20":
+            this.protocols = new String[] { "TLSv1.2" };
+            this.cipherSuites = new String[] { "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256" };
+            break;
+        default:
+            break;
+        }
+
+        this.serverContext = TlsEngines.newServerContext();
+        this.clientContext = TlsEngines.newClientContext();
+
+        this.client = configure(TlsEngines.newClientEngine(clientContext));
+        this.server = configure(TlsEngines.newServerEngine(serverContext));
+
+        TlsEngines.handshake(client, server);
+
+        this.inApp = ByteBuffer.allocate(payloadSize);
+        this.outNet = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+        this.outApp = ByteBuffer.allocate(server.getSession().getApplicationBufferSize());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(MICROSECONDS)
+    public void handshake() throws Exception
+    {
+        final SSLEngine client = configure(TlsEngines.newClientEngine(clientContext));
+        final SSLEngine server = configure(TlsEngines.newServerEngine(serverContext));
+
+        TlsEngines.handshake(client, server);
+
+        // full handshake every time
+        client.getSession().invalidate();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(SECONDS)
+    public void wrapAndUnwrap(
+        Bytes counters) throws Exception
+    {
+        inApp.clear();
+        outNet.clear();
+
+        client.wrap(inApp, outNet);
+
+        outNet.flip();
+        outApp.clear();
+
+        counters.bytes += server.unwrap(outNet, outApp).bytesProduced();
+    }
+
+    private SSLEngine configure(
+        SSLEngine engine)
+    {
+        if (protocols != null)
+        {
+            final SSLParameters parameters = engine.getSSLParameters();
+            parameters.setProtocols(protocols);
+            parameters.setCipherSuites(cipherSuites);
+            parameters.setUseCipherSuitesOrder(true);
+            engine.setSSLParameters(parameters);
+        }
+        return engine;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(TlsPolicyBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares unwrapping a TLS record after copying it from the decode slot into a heap buffer
+ * against unwrapping the record directly from a view over the (off-heap) decode slot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class TlsUnwrapBM
+{
+    @Param({ "1024", "16384" })
+    private int payloadSize;
+
+    private SSLEngine client;
+    private SSLEngine server;
+
+    private ByteBuffer payload;
+    private ByteBuffer slotByteBuffer;
+    private MutableDirectBuffer slotBuffer;
+    private int slotOffset;
+    private int recordLength;
+
+    private ByteBuffer inNetByteBuffer;
+    private MutableDirectBuffer inNetBuffer;
+    private ByteBuffer outAppByteBuffer;
+
+    @Setup(Level.Trial)
+    public void init() throws Exception
+    {
+        final SSLContext serverContext = TlsEngines.newServerContext();
+        final SSLContext clientContext = TlsEngines.newClientContext();
+
+        this.client = TlsEngines.newClientEngine(clientContext);
+        this.server = TlsEngines.newServerEngine(serverContext);
+
+        TlsEngines.handshake(client, server);
+
+        final int capacity = 65536;
+        this.payload = ByteBuffer.allocate(payloadSize);
+
+        // decode pool slots are direct, sliced from a larger buffer at a non-zero offset
+        this.slotOffset = capacity;
+        this.slotByteBuffer = ByteBuffer.allocateDirect(capacity << 1);
+        this.slotBuffer = new UnsafeBuffer(slotByteBuffer);
+
+        this.inNetByteBuffer = ByteBuffer.allocate(capacity);
+        this.inNetBuffer = new UnsafeBuffer(inNetByteBuffer);
+        this.outAppByteBuffer = ByteBuffer.allocate(capacity);
+    }
+
+    @Setup(Level.Invocation)
+    public void wrap() throws Exception
+    {
+        payload.clear();
+        slotByteBuffer.clear();
+        slotByteBuffer.position(slotOffset);
+
+        final SSLEngineResult result = client.wrap(payload, slotByteBuffer);
+        this.recordLength = result.bytesProduced();
+    }
+
+    @Benchmark
+    public int copy() throws Exception
+    {
+        inNetByteBuffer.clear();
+        inNetBuffer.putBytes(0, slotBuffer, slotOffset, recordLength);
+        inNetByteBuffer.limit(recordLength);
+        outAppByteBuffer.clear();
+
+        return server.unwrap(inNetByteBuffer, outAppByteBuffer).bytesProduced();
+    }
+
+    @Benchmark
+    public int zeroCopy() throws Exception
+    {
+        slotByteBuffer.limit(slotOffset + recordLength);
+        slotByteBuffer.position(slotOffset);
+        outAppByteBuffer.clear();
+
+        return server.unwrap(slotByteBuffer, outAppByteBuffer).bytesProduced();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(TlsUnwrapBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
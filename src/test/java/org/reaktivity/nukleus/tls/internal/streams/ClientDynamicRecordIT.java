@@ -0,0 +1,106 @@
+/**
+ * Copyright 2016-2020 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.tls.internal.streams;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.rules.RuleChain.outerRule;
+import static org.reaktivity.nukleus.tls.internal.TlsConfiguration.TLS_ENCODE_RECORD_DYNAMIC;
+import static org.reaktivity.nukleus.tls.internal.TlsConfiguration.TLS_ENCODE_RECORD_INITIAL_SIZE;
+import static org.reaktivity.nukleus.tls.internal.TlsConfiguration.TLS_ENCODE_RECORD_WARMUP_BYTES;
+import static org.reaktivity.reaktor.test.ReaktorRule.EXTERNAL_AFFINITY_MASK;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.ScriptProperty;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.reaktivity.reaktor.test.ReaktorRule;
+
+public class ClientDynamicRecordIT
+{
+    private final K3poRule k3po = new K3poRule()
+            .addScriptRoot("route", "org/reaktivity/specification/nukleus/tls/control/route")
+            .addScriptRoot("client", "org/reaktivity/specification/nukleus/tls/streams")
+            .addScriptRoot("server", "org/reaktivity/specification/tls");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(10, SECONDS));
+
+    private final ReaktorRule reaktor = new ReaktorRule()
+            .directory("target/nukleus-itests")
+            .commandBufferCapacity(1024)
+            .responseBufferCapacity(1024)
+            .counterValuesBufferCapacity(8192)
+            .configure(TLS_ENCODE_RECORD_DYNAMIC, true)
+            .configure(TLS_ENCODE_RECORD_INITIAL_SIZE, 256)
+            .configure(TLS_ENCODE_RECORD_WARMUP_BYTES, 16384L)
+            .nukleus("tls"::equals)
+            .affinityMask("target#0", EXTERNAL_AFFINITY_MASK)
+            .clean();
+
+    @Rule
+    public final TestRule chain = outerRule(reaktor).around(k3po).around(timeout);
+
+    @Test
+    @Specification({
+        "${route}/client/controller",
+        "${client}/connection.established/client",
+        "${server}/connection.established/server" })
+    @ScriptProperty({
+        "serverAccept \"nukleus://streams/target#0\"" })
+    public void shouldEstablishConnection() throws Exception
+    {
+        k3po.finish();
+    }
+
+    @Test
+    @Specification({
+        "${route}/client/controller",
+        "${client}/echo.payload.length.10k/client",
+        "${server}/echo.payload.length.10k/server"})
+    @ScriptProperty({
+        "serverAccept \"nukleus://streams/target#0\"" })
+    public void shouldEchoPayloadLength10k() throws Exception
+    {
+        k3po.finish();
+    }
+
+    @Test
+    @Specification({
+        "${route}/client/controller",
+        "${client}/echo.payload.length.100k/client",
+        "${server}/echo.payload.length.100k/server"})
+    @ScriptProperty({
+        "serverAccept \"nukleus://streams/target#0\"" })
+    public void shouldEchoPayloadLength100k() throws Exception
+    {
+        k3po.finish();
+    }
+
+    @Test
+    @Specification({
+        "${route}/client/controller",
+        "${client}/echo.payload.length.1000k/client",
+        "${server}/echo.payload.length.1000k/server"})
+    @ScriptProperty({
+        "serverAccept \"nukleus://streams/target#0\"" })
+    public void shouldEchoPayloadLength1000k() throws Exception
+    {
+        k3po.finish();
+    }
+}